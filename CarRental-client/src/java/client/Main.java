@@ -1,11 +1,13 @@
 package client;
 
+import java.util.Arrays;
 import java.util.Date;
 import java.util.List;
 import java.util.Set;
 import javax.naming.InitialContext;
 import rental.CarType;
 import rental.Reservation;
+import session.CompanyImportResult;
 import session.ManagerSessionRemote;
 import session.ReservationSessionRemote;
 
@@ -20,10 +22,36 @@ public class Main extends AbstractTestManagement<ReservationSessionRemote, Manag
     public static void main(String[] args) throws Exception {
         context = new InitialContext();
         ManagerSessionRemote managerSession = (ManagerSessionRemote) context.lookup(ManagerSessionRemote.class.getName());
-        managerSession.addCompany("dockx.csv");
-        managerSession.addCompany("hertz.csv");
+        boolean allAdded = true;
+        for (CompanyImportResult result : managerSession.addCompanies(Arrays.asList("dockx.csv", "hertz.csv"))) {
+            System.out.println(result);
+            allAdded &= result.isAdded();
+        }
+        // the scenario expects every company, running it without one only hides the failure
+        if (!allAdded) {
+            System.err.println("Not every company could be added, stopping");
+            System.exit(1);
+        }
+        checkReimport(managerSession, "Dockx", "dockx.csv");
         new Main("trips").run();
     }
+    
+    /**
+     * Remove a company and import it again, twice, so the second import runs
+     * after the first one was recorded as complete. Both imports have to
+     * store the whole fleet.
+     */
+    private static void checkReimport(ManagerSessionRemote ms, String company, String companyCsv) throws Exception {
+        ms.removeCompany(company);
+        long first = ms.importCompany(companyCsv, 0);
+        ms.removeCompany(company);
+        long second = ms.importCompany(companyCsv, 0);
+        if (first > 0 && first == second && ms.getAllRentalCompanies().contains(company)) {
+            System.out.println("Correct re-import of " + company + ": " + second + " cars");
+        } else {
+            System.err.println("Incorrect re-import of " + company + ": " + first + " then " + second + " cars");
+        }
+    }
 
     @Override
     protected ReservationSessionRemote getNewReservationSession(String name) throws Exception {
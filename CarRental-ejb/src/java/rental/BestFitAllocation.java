@@ -0,0 +1,27 @@
+package rental;
+
+/**
+ * Takes the free car whose gap around the period is tightest, counting the
+ * free days both before and after it, so bookings fill up the gaps between
+ * reservations and long free stretches stay whole for later, longer rentals.
+ *
+ * The gaps come from the calendars shared by all transactions (see
+ * FreeGaps), so finding the car does not load the reservations of the
+ * fleet. When the suggested car turns out to be taken, e.g. by an earlier
+ * quote of the same confirmation, the cars are searched one by one.
+ */
+public class BestFitAllocation implements CarAllocationStrategy {
+
+    private final CarAllocationStrategy fallback = new FirstFitAllocation();
+
+    @Override
+    public Car allocate(CarRentalCompany company, String carType, int firstDay, int lastDay) {
+        Integer carId = FreeGaps.bestFit(company, carType, firstDay, lastDay);
+        if (carId != null) {
+            Car car = company.getCar(carId);
+            if (car.isAvailable(firstDay, lastDay))
+                return car;
+        }
+        return fallback.allocate(company, carType, firstDay, lastDay);
+    }
+}
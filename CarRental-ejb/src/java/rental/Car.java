@@ -1,7 +1,6 @@
 package rental;
 
 import java.io.Serializable;
-import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
 import javax.persistence.CascadeType;
@@ -14,13 +13,20 @@ import javax.persistence.JoinColumn;
 import javax.persistence.JoinTable;
 import javax.persistence.OneToMany;
 import javax.persistence.OneToOne;
+import javax.persistence.Transient;
+import javax.persistence.Version;
+import org.eclipse.persistence.annotations.BatchFetch;
+import org.eclipse.persistence.annotations.BatchFetchType;
 
 
 @Entity
 public class Car implements Serializable {
 
-    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Id @GeneratedValue(strategy = GenerationType.TABLE, generator = "CarIds")
     private int id;
+    // bumped by every confirmation that books this car
+    @Version
+    private int version;
     @OneToOne(fetch = FetchType.EAGER, cascade = {CascadeType.MERGE, CascadeType.REFRESH})
     private CarType type;
     @JoinTable(
@@ -28,9 +34,14 @@ public class Car implements Serializable {
             joinColumns = @JoinColumn( name="car_fk"),
             inverseJoinColumns = @JoinColumn( name="reservation_fk")
         )
-    @OneToMany(fetch = FetchType.EAGER, cascade = CascadeType.ALL, orphanRemoval = true)
+    @OneToMany(fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
     @JoinColumn(name = "car_id")
+    // walking the cars of a company loads their reservations in a few IN queries, not one per car
+    @BatchFetch(BatchFetchType.IN)
     private Set<Reservation> reservations;
+    // built lazily, JPA fills the reservations field without going through addReservation
+    @Transient
+    private transient ReservationIndex reservationIndex;
 
     /***************
      * CONSTRUCTOR *
@@ -72,6 +83,7 @@ public class Car implements Serializable {
 
     public void setReservations(Set<Reservation> reservations) {
         this.reservations = reservations;
+        this.reservationIndex = null;
     }
 
     
@@ -79,25 +91,36 @@ public class Car implements Serializable {
      * RESERVATIONS *
      ****************/
 
-    public boolean isAvailable(Date start, Date end) {
-        if(!start.before(end))
+    /**
+     * Check whether this car is free from the first until the last day of a
+     * period, both given as day numbers (see EpochDay).
+     */
+    public boolean isAvailable(int firstDay, int lastDay) {
+        if(firstDay >= lastDay)
             throw new IllegalArgumentException("Illegal given period");
 
-        for(Reservation reservation : reservations) {
-            if(reservation.getEndDate().before(start) || reservation.getStartDate().after(end))
-                continue;
-            return false;
-        }
-        return true;
+        return !getReservationIndex().overlaps(firstDay, lastDay);
     }
     
     public void addReservation(Reservation res) {
         reservations.add(res);
+        if(reservationIndex != null)
+            reservationIndex.add(res);
     }
     
-    public void removeReservation(Reservation reservation) {
+    public boolean removeReservation(Reservation reservation) {
         // equals-method for Reservation is required!
-        reservations.remove(reservation);
+        if(!reservations.remove(reservation))
+            return false;
+        if(reservationIndex != null)
+            reservationIndex.remove(reservation);
+        return true;
+    }
+    
+    private ReservationIndex getReservationIndex() {
+        if(reservationIndex == null)
+            reservationIndex = new ReservationIndex(reservations);
+        return reservationIndex;
     }
 
 }
\ No newline at end of file
@@ -0,0 +1,14 @@
+package rental;
+
+/**
+ * Decides which free car of a type a confirmed quote gets.
+ */
+public interface CarAllocationStrategy {
+
+    /**
+     * Pick a car of the given type that is free during the whole period,
+     * given as day numbers (see EpochDay).
+     * @return the car, or null if no car of the type is free
+     */
+    Car allocate(CarRentalCompany company, String carType, int firstDay, int lastDay);
+}
@@ -1,13 +1,15 @@
 package rental;
 
 import java.io.Serializable;
-import java.util.Date;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import javax.persistence.Cacheable;
 import javax.persistence.CascadeType;
 import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
@@ -17,73 +19,101 @@ import javax.persistence.JoinColumn;
 import javax.persistence.NamedQueries;
 import javax.persistence.NamedQuery;
 import javax.persistence.OneToMany;
+import javax.persistence.QueryHint;
+import javax.persistence.Transient;
 
 @NamedQueries({
     /**
-     * Company related queries
+     * Company related queries, a company is left out while its fleet is
+     * still being imported
      */
     @NamedQuery(
             name = "getAllRentalCompanies",
-            query = "SELECT crc FROM CarRentalCompany crc"),
+            query = "SELECT crc FROM CarRentalCompany crc WHERE NOT EXISTS ("
+                    + "SELECT fi FROM FleetImport fi WHERE fi.companyName = crc.name AND fi.completed = FALSE)"),
     @NamedQuery(
             name = "getAllRentalCompanyNames",
-            query = "SELECT crc.name FROM CarRentalCompany crc"),
+            query = "SELECT crc.name FROM CarRentalCompany crc WHERE NOT EXISTS ("
+                    + "SELECT fi FROM FleetImport fi WHERE fi.companyName = crc.name AND fi.completed = FALSE)",
+            hints = @QueryHint(name = "eclipselink.query-results-cache", value = "true")),
+    @NamedQuery(
+            name = "getCarTypesOfAllCompanies",
+            query = "SELECT crc.name, t FROM CarRentalCompany crc JOIN crc.carTypes t WHERE NOT EXISTS ("
+                    + "SELECT fi FROM FleetImport fi WHERE fi.companyName = crc.name AND fi.completed = FALSE)"),
     /**
      * Car related queries
      */
     @NamedQuery(
             name = "getAllCarTypesInCompany",
             query = "SELECT c.type FROM Car c, CarRentalCompany crc "
-                    + "WHERE crc.name = :companyName AND c MEMBER OF crc.cars"),
+                    + "WHERE crc.name = :companyName AND c MEMBER OF crc.cars",
+            hints = @QueryHint(name = "eclipselink.query-results-cache", value = "true")),
     @NamedQuery(
             name = "getAllIdsForTypeInCompany",
             query = "SELECT c.id FROM Car c, CarRentalCompany crc "
-                    + "WHERE crc.name = :companyName AND c.type.name = :type AND c MEMBER OF crc.cars"),
+                    + "WHERE crc.name = :companyName AND c.type.name = :type AND c MEMBER OF crc.cars",
+            hints = @QueryHint(name = "eclipselink.query-results-cache", value = "true")),
+    @NamedQuery(
+            name = "countFreeCarsOfTypeInCompany",
+            query = "SELECT COUNT(c) FROM CarRentalCompany crc JOIN crc.cars c "
+                    + "WHERE crc.name = :companyName AND c.type.name = :type AND NOT EXISTS ("
+                    + "SELECT res FROM Reservation res WHERE res.carId = c.id "
+                    + "AND res.startDate <= :end AND res.endDate >= :start)"),
     @NamedQuery(
-            name = "getAvailableCarTypesInPeriod",
-            query = "SELECT c.type FROM Car c WHERE (SELECT COUNT(res) FROM Reservation res "
-                    + "WHERE res.carId = c.id AND res.startDate >= :start AND res.endDate <= :end) <= 0"),
+            name = "getFreeCarIdsOfTypeInCompany",
+            query = "SELECT c.id FROM CarRentalCompany crc JOIN crc.cars c "
+                    + "WHERE crc.name = :companyName AND c.type.name = :type AND NOT EXISTS ("
+                    + "SELECT res FROM Reservation res WHERE res.carId = c.id "
+                    + "AND res.startDate <= :end AND res.endDate >= :start)"),
     @NamedQuery(
-            name = "getCheapestCarTypeInPeriodAndRegion",
-            query = "SELECT c.type FROM CarRentalCompany crc JOIN crc.regions r JOIN Car c JOIN CarType t WHERE "
-                    + "c.type.rentalPricePerDay = (SELECT MIN(c.type.rentalPricePerDay) FROM CarRentalCompany crc JOIN Car c JOIN CarType t JOIN crc.regions r WHERE "
-                    + "r = :region "
-                    + "AND (SELECT COUNT(res) FROM Reservation res WHERE res.carId = c.id AND res.startDate >= :start AND res.endDate <= :end) <= 0)"),
+            name = "countCarsOfTypeInCompany",
+            query = "SELECT COUNT(c) FROM CarRentalCompany crc JOIN crc.cars c "
+                    + "WHERE crc.name = :companyName AND c.type.name = :type"),
     @NamedQuery(
-            name = "getMostPopularCarTypeInCompanyInYear",
-            query = "SELECT c.type FROM Car c, Reservation res "
-                    + "WHERE res.rentalCompany = :company AND EXTRACT(YEAR FROM res.startDate) = :year AND c.id = res.carId GROUP BY c.type "
-                    + "ORDER BY COUNT(res) DESC"),
+            name = "getCarsWithIdsInCompany",
+            query = "SELECT c FROM CarRentalCompany crc JOIN crc.cars c "
+                    + "WHERE crc.name = :companyName AND c.id IN :ids"),
+    @NamedQuery(
+            name = "getCarTypeInCompany",
+            query = "SELECT t FROM CarRentalCompany crc JOIN crc.carTypes t "
+                    + "WHERE crc.name = :companyName AND t.name = :type"),
     /**
      * Reservation related queries
      */
     @NamedQuery(
-            name = "getNumberOfReservationsForCarAndIDInCompany",
-            query = "SELECT res FROM Car c, CarRentalCompany crc, Reservation res "
-                    + "WHERE crc.name = :companyName AND c.type.name = :name AND c.id = :id AND res MEMBER OF c.reservations"),
+            name = "countReservationsForCarAndIDInCompany",
+            query = "SELECT COUNT(res) FROM Reservation res "
+                    + "WHERE res.rentalCompany = :companyName AND res.carType = :name AND res.carId = :id"),
     @NamedQuery(
-            name = "getNumberOfReservationsForCarInCompany",
-            query = "SELECT res FROM Car c, CarRentalCompany crc, Reservation res "
-                    + "WHERE crc.name = :companyName AND c.type.name = :name AND res MEMBER OF c.reservations"),
+            name = "countReservationsForCarInCompany",
+            query = "SELECT COUNT(res) FROM Reservation res "
+                    + "WHERE res.rentalCompany = :companyName AND res.carType = :name"),
     @NamedQuery(
             name = "getReservationsByRenter",
             query = "SELECT res FROM Reservation res "
                     + "WHERE res.carRenter = :renter"),
     @NamedQuery(
-            name = "getBestClientResCount",
-            query = "SELECT COUNT(res.carRenter) FROM Reservation res "
-                    + "GROUP BY res.carRenter ORDER BY COUNT(res.carRenter) DESC"),
+            name = "countReservationsByRenter",
+            query = "SELECT COUNT(res) FROM Reservation res "
+                    + "WHERE res.carRenter = :renter"),
     @NamedQuery(
-            name = "getClientsWithReservations",
-            query = "SELECT res.carRenter FROM Reservation res "
-                    + "GROUP BY res.carRenter HAVING COUNT(res) = :resCount")
+            name = "getReservationPeriodsOfTypeInCompany",
+            query = "SELECT res.startDate, res.endDate FROM Reservation res "
+                    + "WHERE res.rentalCompany = :companyName AND res.carType = :type"),
+    @NamedQuery(
+            name = "getReservationsAfterId",
+            query = "SELECT res FROM Reservation res "
+                    + "WHERE res.reservationId > :after ORDER BY res.reservationId",
+            hints = @QueryHint(name = "eclipselink.read-only", value = "true"))
     })
 
 
 @Entity
+@Cacheable
 public class CarRentalCompany implements Serializable {
 
     private static Logger logger = Logger.getLogger(CarRentalCompany.class.getName());
+    private static final CarAllocationStrategy DEFAULT_ALLOCATION_STRATEGY = defaultAllocationStrategy();
     @Id
     private String name;
     @OneToMany(fetch = FetchType.LAZY, cascade = CascadeType.ALL, orphanRemoval = true)
@@ -94,6 +124,17 @@ public class CarRentalCompany implements Serializable {
     private Set<CarType> carTypes = new HashSet<CarType>();
     @ElementCollection
     private List<String> regions;
+    // lookup indexes, built lazily after JPA loaded the entity
+    @Transient
+    private transient Map<String, CarType> typesByName;
+    @Transient
+    private transient Map<Integer, Car> carsById;
+    @Transient
+    private transient Map<String, Set<Car>> carsByType;
+    @Transient
+    private transient Map<String, Set<Reservation>> reservationsByRenter;
+    @Transient
+    private transient CarAllocationStrategy allocationStrategy = DEFAULT_ALLOCATION_STRATEGY;
 
 	
     /***************
@@ -133,6 +174,9 @@ public class CarRentalCompany implements Serializable {
 
     public void setCars(List<Car> cars) {
         this.cars = cars;
+        this.carsById = null;
+        this.carsByType = null;
+        this.reservationsByRenter = null;
     }
 
     public Set<CarType> getCarTypes() {
@@ -141,6 +185,7 @@ public class CarRentalCompany implements Serializable {
 
     public void setCarTypes(Set<CarType> carTypes) {
         this.carTypes = carTypes;
+        this.typesByName = null;
     }
 
     public List<String> getRegions() {
@@ -151,31 +196,45 @@ public class CarRentalCompany implements Serializable {
         this.regions = regions;
     }
 
+    public CarAllocationStrategy getAllocationStrategy() {
+        return allocationStrategy;
+    }
+
+    public void setAllocationStrategy(CarAllocationStrategy allocationStrategy) {
+        this.allocationStrategy = allocationStrategy;
+    }
+
+    /**
+     * The strategy named by the system property rental.allocation
+     * (best-fit, first-fit or random), first-fit by default.
+     */
+    private static CarAllocationStrategy defaultAllocationStrategy() {
+        String name = System.getProperty("rental.allocation", "first-fit");
+        switch (name) {
+            case "best-fit":
+                return new BestFitAllocation();
+            case "random":
+                return new RandomAllocation();
+            default:
+                return new FirstFitAllocation();
+        }
+    }
+
     /*************
      * CAR TYPES *
      *************/
     
     public CarType getType(String carTypeName) {
-        for(CarType type:carTypes){
-            if(type.getName().equals(carTypeName))
-                return type;
-        }
-        throw new IllegalArgumentException("<" + carTypeName + "> No cartype of name " + carTypeName);
-    }
-
-    public boolean isAvailable(String carTypeName, Date start, Date end) {
-        logger.log(Level.INFO, "<{0}> Checking availability for car type {1}", new Object[]{name, carTypeName});
-        return getAvailableCarTypes(start, end).contains(getType(carTypeName));
-    }
-
-    public Set<CarType> getAvailableCarTypes(Date start, Date end) {
-        Set<CarType> availableCarTypes = new HashSet<CarType>();
-        for (Car car : cars) {
-            if (car.isAvailable(start, end)) {
-                availableCarTypes.add(car.getType());
+        if (typesByName == null) {
+            typesByName = new HashMap<String, CarType>();
+            for (CarType type : carTypes) {
+                typesByName.put(type.getName(), type);
             }
         }
-        return availableCarTypes;
+        CarType type = typesByName.get(carTypeName);
+        if (type == null)
+            throw new IllegalArgumentException("<" + carTypeName + "> No cartype of name " + carTypeName);
+        return type;
     }
 
     /*********
@@ -183,100 +242,152 @@ public class CarRentalCompany implements Serializable {
      *********/
     
     public Car getCar(int uid) {
-        for (Car car : cars) {
-            if (car.getId() == uid) {
-                return car;
-            }
+        Car car = getCarsById().get(uid);
+        if (car == null) {
+            // ids are only assigned when the cars are persisted, which may
+            // have happened after the index was built
+            carsById = null;
+            car = getCarsById().get(uid);
         }
-        throw new IllegalArgumentException("<" + name + "> No car with uid " + uid);
+        if (car == null)
+            throw new IllegalArgumentException("<" + name + "> No car with uid " + uid);
+        return car;
     }
 
     public Set<Car> getCars(CarType type) {
-        Set<Car> out = new HashSet<Car>();
-        for (Car car : cars) {
-            if (car.getType().equals(type)) {
-                out.add(car);
-            }
-        }
-        return out;
+        return getCars(type.getName());
     }
     
-     public Set<Car> getCars(String type) {
-        Set<Car> out = new HashSet<Car>();
-        for (Car car : cars) {
-            if (type.equals(car.getType().getName())) {
-                out.add(car);
+    public Set<Car> getCars(String type) {
+        Set<Car> out = getCarsByType().get(type);
+        return out == null ? Collections.<Car>emptySet() : Collections.unmodifiableSet(out);
+    }
+
+    public void addCar(Car car) {
+        cars.add(car);
+        if (carTypes.add(car.getType()) && typesByName != null)
+            typesByName.put(car.getType().getName(), car.getType());
+        if (carsById != null)
+            carsById.put(car.getId(), car);
+        if (carsByType != null)
+            addToTypeIndex(car);
+    }
+
+    private Map<Integer, Car> getCarsById() {
+        if (carsById == null) {
+            carsById = new HashMap<Integer, Car>();
+            for (Car car : cars) {
+                carsById.put(car.getId(), car);
             }
         }
-        return out;
+        return carsById;
     }
 
-    private List<Car> getAvailableCars(String carType, Date start, Date end) {
-        List<Car> availableCars = new LinkedList<Car>();
-        for (Car car : cars) {
-            if (car.getType().getName().equals(carType) && car.isAvailable(start, end)) {
-                availableCars.add(car);
+    private Map<String, Set<Car>> getCarsByType() {
+        if (carsByType == null) {
+            carsByType = new HashMap<String, Set<Car>>();
+            for (Car car : cars) {
+                addToTypeIndex(car);
             }
         }
-        return availableCars;
+        return carsByType;
+    }
+
+    private void addToTypeIndex(Car car) {
+        Set<Car> typeCars = carsByType.get(car.getType().getName());
+        if (typeCars == null) {
+            typeCars = new HashSet<Car>();
+            carsByType.put(car.getType().getName(), typeCars);
+        }
+        typeCars.add(car);
     }
 
     /****************
      * RESERVATIONS *
      ****************/
     
-    public Quote createQuote(ReservationConstraints constraints, String guest)
-            throws ReservationException {
-        logger.log(Level.INFO, "<{0}> Creating tentative reservation for {1} with constraints {2}",
-                new Object[]{name, guest, constraints.toString()});
-
-
-        if (!this.regions.contains(constraints.getRegion()) || !isAvailable(constraints.getCarType(), constraints.getStartDate(), constraints.getEndDate())) {
-            throw new ReservationException("<" + name
-                    + "> No cars available to satisfy the given constraints.");
-        }
-		
+    /**
+     * Create a quote without looking at the cars of this company, for callers
+     * that already checked availability elsewhere, e.g. in the database.
+     */
+    public Quote priceQuote(ReservationConstraints constraints, String guest) {
         CarType type = getType(constraints.getCarType());
 
-        double price = calculateRentalPrice(type.getRentalPricePerDay(), constraints.getStartDate(), constraints.getEndDate());
+        double price = calculateRentalPrice(type.getRentalPricePerDay(), constraints.getStartDay(), constraints.getEndDay());
 
-        return new Quote(guest, constraints.getStartDate(), constraints.getEndDate(), getName(), constraints.getCarType(), price);
+        return new Quote(guest, constraints.getStartDay(), constraints.getEndDay(), getName(), constraints.getCarType(), price);
     }
 
     // Implementation can be subject to different pricing strategies
-    private double calculateRentalPrice(double rentalPricePerDay, Date start, Date end) {
-        return rentalPricePerDay * Math.ceil((end.getTime() - start.getTime())
-                / (1000 * 60 * 60 * 24D));
+    private double calculateRentalPrice(double rentalPricePerDay, int startDay, int endDay) {
+        // whole days, so a period across a daylight saving change is not charged an extra day
+        return rentalPricePerDay * (endDay - startDay);
     }
 
     public Reservation confirmQuote(Quote quote) throws ReservationException {
-        logger.log(Level.INFO, "<{0}> Reservation of {1}", new Object[]{name, quote.toString()});
-        List<Car> availableCars = getAvailableCars(quote.getCarType(), quote.getStartDate(), quote.getEndDate());
-        if (availableCars.isEmpty()) {
+        Car car = allocationStrategy.allocate(this, quote.getCarType(), quote.getStartDay(), quote.getEndDay());
+        if (car == null) {
             throw new ReservationException("Reservation failed, all cars of type " + quote.getCarType()
                     + " are unavailable from " + quote.getStartDate() + " to " + quote.getEndDate());
         }
-        Car car = availableCars.get((int) (Math.random() * availableCars.size()));
+        return reserve(quote, car);
+    }
 
+    /**
+     * Confirm a quote on a car that was held for it, without searching the
+     * other cars of the type. Falls back to the allocation strategy if the
+     * held car turns out to be taken after all.
+     */
+    public Reservation confirmQuote(Quote quote, Car heldCar) throws ReservationException {
+        if (heldCar == null || !heldCar.getType().getName().equals(quote.getCarType())
+                || !heldCar.isAvailable(quote.getStartDay(), quote.getEndDay()))
+            return confirmQuote(quote);
+        return reserve(quote, heldCar);
+    }
+
+    private Reservation reserve(Quote quote, Car car) {
         Reservation res = new Reservation(quote, car.getId());
         car.addReservation(res);
+        if (reservationsByRenter != null)
+            addToRenterIndex(res);
         return res;
     }
 
     public void cancelReservation(Reservation res) {
-        logger.log(Level.INFO, "<{0}> Cancelling reservation {1}", new Object[]{name, res.toString()});
-        getCar(res.getCarId()).removeReservation(res);
+        if (getCar(res.getCarId()).removeReservation(res) && reservationsByRenter != null) {
+            Set<Reservation> renterReservations = reservationsByRenter.get(res.getCarRenter());
+            if (renterReservations != null)
+                renterReservations.remove(res);
+        }
     }
-    
+
+    /**
+     * The reservations of the given renter with this company. The renter
+     * index is built on first use and kept up to date by confirmQuote and
+     * cancelReservation, so later calls cost time in the renter's own
+     * reservations only.
+     */
     public Set<Reservation> getReservationsBy(String renter) {
-        logger.log(Level.INFO, "<{0}> Retrieving reservations by {1}", new Object[]{name, renter});
-        Set<Reservation> out = new HashSet<Reservation>();
-        for(Car c : cars) {
-            for(Reservation r : c.getReservations()) {
-                if(r.getCarRenter().equals(renter))
-                    out.add(r);
+        if (logger.isLoggable(Level.FINE))
+            logger.log(Level.FINE, "<{0}> Retrieving reservations by {1}", new Object[]{name, renter});
+        if (reservationsByRenter == null) {
+            reservationsByRenter = new HashMap<String, Set<Reservation>>();
+            for (Car c : cars) {
+                for (Reservation r : c.getReservations()) {
+                    addToRenterIndex(r);
+                }
             }
         }
-        return out;
+        Set<Reservation> renterReservations = reservationsByRenter.get(renter);
+        return renterReservations == null ? new HashSet<Reservation>() : new HashSet<Reservation>(renterReservations);
+    }
+
+    private void addToRenterIndex(Reservation res) {
+        Set<Reservation> renterReservations = reservationsByRenter.get(res.getCarRenter());
+        if (renterReservations == null) {
+            renterReservations = new HashSet<Reservation>();
+            reservationsByRenter.put(res.getCarRenter(), renterReservations);
+        }
+        renterReservations.add(res);
     }
 }
\ No newline at end of file
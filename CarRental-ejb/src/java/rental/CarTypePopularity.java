@@ -0,0 +1,107 @@
+package rental;
+
+import java.io.Serializable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.IdClass;
+import javax.persistence.Index;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * Rollup of the number of reservations per company, year and car type,
+ * kept up to date in the same transaction as the reservations themselves.
+ * The year is the year in which the reservation starts.
+ */
+@NamedQueries({
+    @NamedQuery(
+            name = "getMostPopularCarTypeNameInCompanyInYear",
+            query = "SELECT p.carType FROM CarTypePopularity p "
+                    + "WHERE p.rentalCompany = :company AND p.rentalYear = :year AND p.reservationCount > 0 "
+                    + "ORDER BY p.reservationCount DESC"),
+    @NamedQuery(
+            name = "deleteCarTypePopularityOfCompany",
+            query = "DELETE FROM CarTypePopularity p WHERE p.rentalCompany = :company"),
+    @NamedQuery(
+            name = "addCarTypeReservations",
+            query = "UPDATE CarTypePopularity p SET p.reservationCount = p.reservationCount + :reservations "
+                    + "WHERE p.rentalCompany = :company AND p.rentalYear = :year AND p.carType = :carType"),
+    @NamedQuery(
+            name = "deleteAllCarTypePopularity",
+            query = "DELETE FROM CarTypePopularity p"),
+    @NamedQuery(
+            name = "getCompaniesWithReservations",
+            query = "SELECT DISTINCT res.rentalCompany FROM Reservation res"),
+    @NamedQuery(
+            name = "countReservationsPerYearAndCarTypeInCompany",
+            query = "SELECT EXTRACT(YEAR FROM res.startDate), res.carType, COUNT(res) "
+                    + "FROM Reservation res WHERE res.rentalCompany = :company "
+                    + "GROUP BY EXTRACT(YEAR FROM res.startDate), res.carType")
+})
+@Entity
+@IdClass(CarTypePopularityKey.class)
+@Table(indexes = @Index(name = "POPULARITY_BY_YEAR", columnList = "rentalCompany, rentalYear, reservationCount"))
+public class CarTypePopularity implements Serializable {
+
+    @Id
+    private String rentalCompany;
+    @Id
+    private int rentalYear;
+    @Id
+    private String carType;
+    private int reservationCount;
+
+    /***************
+     * CONSTRUCTOR *
+     ***************/
+
+    public CarTypePopularity(String rentalCompany, int rentalYear, String carType) {
+        this.rentalCompany = rentalCompany;
+        this.rentalYear = rentalYear;
+        this.carType = carType;
+    }
+
+    public CarTypePopularity() {
+    }
+
+    /*************
+     * Getters / Setters *
+     *************/
+
+    public String getRentalCompany() {
+        return rentalCompany;
+    }
+
+    public void setRentalCompany(String rentalCompany) {
+        this.rentalCompany = rentalCompany;
+    }
+
+    public int getRentalYear() {
+        return rentalYear;
+    }
+
+    public void setRentalYear(int rentalYear) {
+        this.rentalYear = rentalYear;
+    }
+
+    public String getCarType() {
+        return carType;
+    }
+
+    public void setCarType(String carType) {
+        this.carType = carType;
+    }
+
+    public int getReservationCount() {
+        return reservationCount;
+    }
+
+    public void setReservationCount(int reservationCount) {
+        this.reservationCount = reservationCount;
+    }
+
+    public void add(int reservations) {
+        reservationCount += reservations;
+    }
+}
@@ -0,0 +1,65 @@
+package rental;
+
+import java.io.Serializable;
+
+public class CarTypePopularityKey implements Serializable {
+
+    private String rentalCompany;
+    private int rentalYear;
+    private String carType;
+
+    public CarTypePopularityKey(String rentalCompany, int rentalYear, String carType) {
+        this.rentalCompany = rentalCompany;
+        this.rentalYear = rentalYear;
+        this.carType = carType;
+    }
+
+    public CarTypePopularityKey() {
+    }
+
+    public String getRentalCompany() {
+        return rentalCompany;
+    }
+
+    public int getRentalYear() {
+        return rentalYear;
+    }
+
+    public String getCarType() {
+        return carType;
+    }
+
+    @Override
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + ((rentalCompany == null) ? 0 : rentalCompany.hashCode());
+        result = prime * result + rentalYear;
+        result = prime * result + ((carType == null) ? 0 : carType.hashCode());
+        return result;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        CarTypePopularityKey other = (CarTypePopularityKey) obj;
+        if (rentalCompany == null) {
+            if (other.rentalCompany != null)
+                return false;
+        } else if (!rentalCompany.equals(other.rentalCompany))
+            return false;
+        if (rentalYear != other.rentalYear)
+            return false;
+        if (carType == null) {
+            if (other.carType != null)
+                return false;
+        } else if (!carType.equals(other.carType))
+            return false;
+        return true;
+    }
+}
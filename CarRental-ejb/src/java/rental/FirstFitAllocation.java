@@ -0,0 +1,16 @@
+package rental;
+
+/**
+ * Takes the first free car it comes across, in no particular order.
+ */
+public class FirstFitAllocation implements CarAllocationStrategy {
+
+    @Override
+    public Car allocate(CarRentalCompany company, String carType, int firstDay, int lastDay) {
+        for (Car car : company.getCars(carType)) {
+            if (car.isAvailable(firstDay, lastDay))
+                return car;
+        }
+        return null;
+    }
+}
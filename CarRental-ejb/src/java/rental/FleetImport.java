@@ -0,0 +1,69 @@
+package rental;
+
+import java.io.Serializable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+
+/**
+ * Progress of a chunked fleet import. It is updated in the same transaction
+ * as every chunk of cars, so an interrupted import can resume right after
+ * the last committed chunk.
+ */
+@Entity
+public class FleetImport implements Serializable {
+
+    @Id
+    private String companyName;
+    private String source;
+    // number of cars committed, in the order they appear in the source
+    private long carsImported;
+    private boolean completed;
+
+    /***************
+     * CONSTRUCTOR *
+     ***************/
+
+    public FleetImport(String companyName, String source) {
+        this.companyName = companyName;
+        this.source = source;
+    }
+
+    public FleetImport() {
+    }
+
+    /*************
+     * Getters / Setters *
+     *************/
+
+    public String getCompanyName() {
+        return companyName;
+    }
+
+    public void setCompanyName(String companyName) {
+        this.companyName = companyName;
+    }
+
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        this.source = source;
+    }
+
+    public long getCarsImported() {
+        return carsImported;
+    }
+
+    public void setCarsImported(long carsImported) {
+        this.carsImported = carsImported;
+    }
+
+    public boolean isCompleted() {
+        return completed;
+    }
+
+    public void setCompleted(boolean completed) {
+        this.completed = completed;
+    }
+}
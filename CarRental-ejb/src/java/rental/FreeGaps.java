@@ -0,0 +1,201 @@
+package rental;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The free gaps in the calendars of the cars of every company, per car type,
+ * shared by all transactions so best-fit allocation does not have to load
+ * the reservations of a whole fleet for every booking.
+ *
+ * The calendars of a car type are built from the entities the first time
+ * they are asked for, and then kept up to date with every committed booking
+ * (see session.QuoteBroker). Anything else that changes the cars or
+ * reservations of a company drops its calendars, they are built again when
+ * needed (see session.CatalogueCache). A calendar is only a hint: the car
+ * it suggests is still checked against its own reservations.
+ */
+public final class FreeGaps {
+
+    // company name -> its calendars
+    private static final ConcurrentHashMap<String, Company> companies = new ConcurrentHashMap<>();
+
+    private FreeGaps() {
+    }
+
+    /**
+     * Find the car of the given type whose free gap around the given period
+     * is tightest, i.e. that leaves the fewest free days before and after
+     * it, with day numbers (see EpochDay).
+     * @return the id of the car, or null if no car is free during the period
+     */
+    static Integer bestFit(CarRentalCompany company, String carType, int firstDay, int lastDay) {
+        Company calendars = companies.get(company.getName());
+        if (calendars == null) {
+            Company created = new Company();
+            calendars = companies.putIfAbsent(company.getName(), created);
+            if (calendars == null)
+                calendars = created;
+        }
+        TypeGaps gaps;
+        long changes;
+        synchronized (calendars) {
+            gaps = calendars.types.get(carType);
+            if (gaps != null)
+                return gaps.bestFit(firstDay, lastDay);
+            changes = calendars.changes;
+        }
+        // built outside the lock, loading the reservations may take a while
+        gaps = new TypeGaps();
+        for (Car car : company.getCars(carType)) {
+            gaps.addCar(car.getId());
+            for (Reservation res : car.getReservations()) {
+                gaps.reserve(car.getId(), res.getStartDay(), res.getEndDay());
+            }
+        }
+        synchronized (calendars) {
+            // a booking that committed meanwhile may be missing, so the calendar is only kept
+            // when nothing changed, or the next call builds it again
+            if (calendars.changes == changes && companies.get(company.getName()) == calendars)
+                calendars.types.put(carType, gaps);
+            return gaps.bestFit(firstDay, lastDay);
+        }
+    }
+
+    /**
+     * Take a reservation into the calendars once the transaction that
+     * stored it committed.
+     */
+    public static void reserved(Reservation res) {
+        Company calendars = companies.get(res.getRentalCompany());
+        if (calendars == null)
+            return;
+        synchronized (calendars) {
+            calendars.changes++;
+            TypeGaps gaps = calendars.types.get(res.getCarType());
+            // a calendar that does not match the reservations is not worth keeping
+            if (gaps != null && !gaps.reserve(res.getCarId(), res.getStartDay(), res.getEndDay()))
+                calendars.types.remove(res.getCarType());
+        }
+    }
+
+    /**
+     * Drop the calendars of the given company, after its cars or
+     * reservations changed outside a booking.
+     */
+    public static void invalidate(String companyName) {
+        Company calendars = companies.remove(companyName);
+        if (calendars == null)
+            return;
+        synchronized (calendars) {
+            calendars.changes++;
+            calendars.types.clear();
+        }
+    }
+
+    public static void invalidateAll() {
+        for (String companyName : companies.keySet()) {
+            invalidate(companyName);
+        }
+    }
+
+    private static class Company {
+
+        // car type name -> its calendars, guarded by this
+        private final Map<String, TypeGaps> types = new HashMap<>();
+        // counts the bookings applied, so a calendar built meanwhile is known to be stale
+        private long changes;
+    }
+
+    /**
+     * The calendars of the cars of one type. Gaps are inclusive ranges of
+     * free days, open-ended gaps reach Integer.MIN_VALUE or MAX_VALUE.
+     */
+    private static class TypeGaps {
+
+        // car id -> its reservations, start day -> end day
+        private final Map<Integer, TreeMap<Integer, Integer>> cars = new HashMap<>();
+        // first free day of a gap -> last free day -> the cars with that gap
+        private final TreeMap<Integer, TreeMap<Integer, Set<Integer>>> gaps = new TreeMap<>();
+
+        void addCar(int carId) {
+            if (cars.put(carId, new TreeMap<Integer, Integer>()) == null)
+                addGap(Integer.MIN_VALUE, Integer.MAX_VALUE, carId);
+        }
+
+        /**
+         * Walk the gaps that start on or before the first day, closest first.
+         * The free days before the period only grow along the way, so the walk
+         * stops as soon as they alone exceed the tightest fit found so far;
+         * only when few cars are free it gets close to visiting every gap.
+         */
+        Integer bestFit(int firstDay, int lastDay) {
+            Integer best = null;
+            long bestSlack = Long.MAX_VALUE;
+            for (Map.Entry<Integer, TreeMap<Integer, Set<Integer>>> byStart
+                    : gaps.headMap(firstDay, true).descendingMap().entrySet()) {
+                long before = (long) firstDay - byStart.getKey();
+                if (before >= bestSlack)
+                    break;
+                // the gap with this start that ends closest after the period
+                Map.Entry<Integer, Set<Integer>> byEnd = byStart.getValue().ceilingEntry(lastDay);
+                if (byEnd != null && before + byEnd.getKey() - lastDay < bestSlack) {
+                    bestSlack = before + byEnd.getKey() - lastDay;
+                    best = byEnd.getValue().iterator().next();
+                }
+            }
+            return best;
+        }
+
+        /**
+         * Split the gap the given reservation falls into.
+         * @return false if the car is unknown or already reserved then
+         */
+        boolean reserve(int carId, int startDay, int endDay) {
+            TreeMap<Integer, Integer> reservations = cars.get(carId);
+            if (reservations == null)
+                return false;
+            Map.Entry<Integer, Integer> previous = reservations.lowerEntry(startDay);
+            Map.Entry<Integer, Integer> next = reservations.ceilingEntry(startDay);
+            if ((previous != null && previous.getValue() >= startDay) || (next != null && next.getKey() <= endDay))
+                return false;
+            int gapStart = previous == null ? Integer.MIN_VALUE : previous.getValue() + 1;
+            int gapEnd = next == null ? Integer.MAX_VALUE : next.getKey() - 1;
+            removeGap(gapStart, gapEnd, carId);
+            if (gapStart < startDay)
+                addGap(gapStart, startDay - 1, carId);
+            if (endDay < gapEnd)
+                addGap(endDay + 1, gapEnd, carId);
+            reservations.put(startDay, endDay);
+            return true;
+        }
+
+        private void addGap(int first, int last, int carId) {
+            TreeMap<Integer, Set<Integer>> byEnd = gaps.get(first);
+            if (byEnd == null) {
+                byEnd = new TreeMap<>();
+                gaps.put(first, byEnd);
+            }
+            Set<Integer> carIds = byEnd.get(last);
+            if (carIds == null) {
+                carIds = new HashSet<>();
+                byEnd.put(last, carIds);
+            }
+            carIds.add(carId);
+        }
+
+        private void removeGap(int first, int last, int carId) {
+            TreeMap<Integer, Set<Integer>> byEnd = gaps.get(first);
+            Set<Integer> carIds = byEnd == null ? null : byEnd.get(last);
+            if (carIds == null || !carIds.remove(carId) || !carIds.isEmpty())
+                return;
+            byEnd.remove(last);
+            if (byEnd.isEmpty())
+                gaps.remove(first);
+        }
+    }
+}
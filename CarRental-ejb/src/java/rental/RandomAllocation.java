@@ -0,0 +1,22 @@
+package rental;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Takes a free car uniformly at random, in a single pass over the cars
+ * without collecting the free ones first.
+ */
+public class RandomAllocation implements CarAllocationStrategy {
+
+    @Override
+    public Car allocate(CarRentalCompany company, String carType, int firstDay, int lastDay) {
+        Car chosen = null;
+        int free = 0;
+        for (Car car : company.getCars(carType)) {
+            // reservoir sampling: the k-th free car replaces the choice with probability 1/k
+            if (car.isAvailable(firstDay, lastDay) && ThreadLocalRandom.current().nextInt(++free) == 0)
+                chosen = car;
+        }
+        return chosen;
+    }
+}
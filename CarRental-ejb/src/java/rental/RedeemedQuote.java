@@ -0,0 +1,50 @@
+package rental;
+
+import java.io.Serializable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+
+/**
+ * A quote token that was confirmed. It is stored in the same transaction
+ * as the reservation, so a second confirmation of the same token fails on
+ * the primary key, whichever server handles it. Rows can be dropped once
+ * the token has expired.
+ */
+@NamedQueries({
+    @NamedQuery(
+            name = "deleteExpiredRedeemedQuotes",
+            query = "DELETE FROM RedeemedQuote q WHERE q.expires < :now")
+})
+@Entity
+public class RedeemedQuote implements Serializable {
+
+    @Id
+    private long holdId;
+    private long expires;
+
+    /***************
+     * CONSTRUCTOR *
+     ***************/
+
+    public RedeemedQuote(long holdId, long expires) {
+        this.holdId = holdId;
+        this.expires = expires;
+    }
+
+    public RedeemedQuote() {
+    }
+
+    /*************
+     * Getters / Setters *
+     *************/
+
+    public long getHoldId() {
+        return holdId;
+    }
+
+    public long getExpires() {
+        return expires;
+    }
+}
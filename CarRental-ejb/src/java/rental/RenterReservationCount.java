@@ -0,0 +1,94 @@
+package rental;
+
+import java.io.Serializable;
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.NamedQueries;
+import javax.persistence.NamedQuery;
+import javax.persistence.Table;
+
+/**
+ * Number of reservations of a single renter, kept up to date in the same
+ * transaction as the reservations themselves so the best clients can be
+ * read from the index on reservationCount instead of grouping all
+ * reservations.
+ */
+@NamedQueries({
+    @NamedQuery(
+            name = "getHighestRenterReservationCount",
+            query = "SELECT MAX(rc.reservationCount) FROM RenterReservationCount rc"),
+    @NamedQuery(
+            name = "getRentersWithReservationCount",
+            query = "SELECT rc.renter FROM RenterReservationCount rc "
+                    + "WHERE rc.reservationCount = :resCount"),
+    @NamedQuery(
+            name = "getTopRenters",
+            query = "SELECT rc.renter FROM RenterReservationCount rc "
+                    + "WHERE rc.reservationCount > 0 ORDER BY rc.reservationCount DESC"),
+    @NamedQuery(
+            name = "countReservationsPerRenterInCompany",
+            query = "SELECT res.carRenter, COUNT(res) FROM Reservation res "
+                    + "WHERE res.rentalCompany = :company GROUP BY res.carRenter"),
+    @NamedQuery(
+            name = "countReservationsPerRenter",
+            query = "SELECT res.carRenter, COUNT(res) FROM Reservation res "
+                    + "GROUP BY res.carRenter ORDER BY res.carRenter"),
+    @NamedQuery(
+            name = "countReservationsPerRenterAfter",
+            query = "SELECT res.carRenter, COUNT(res) FROM Reservation res WHERE res.carRenter > :after "
+                    + "GROUP BY res.carRenter ORDER BY res.carRenter"),
+    @NamedQuery(
+            name = "addRenterReservations",
+            query = "UPDATE RenterReservationCount rc SET rc.reservationCount = rc.reservationCount + :reservations "
+                    + "WHERE rc.renter = :renter"),
+    @NamedQuery(
+            name = "deleteEmptyRenterReservationCounts",
+            query = "DELETE FROM RenterReservationCount rc WHERE rc.reservationCount <= 0"),
+    @NamedQuery(
+            name = "deleteAllRenterReservationCounts",
+            query = "DELETE FROM RenterReservationCount rc")
+})
+@Entity
+@Table(indexes = @Index(name = "RENTER_RESERVATION_COUNT", columnList = "reservationCount"))
+public class RenterReservationCount implements Serializable {
+
+    @Id
+    private String renter;
+    private int reservationCount;
+
+    /***************
+     * CONSTRUCTOR *
+     ***************/
+
+    public RenterReservationCount(String renter) {
+        this.renter = renter;
+    }
+
+    public RenterReservationCount() {
+    }
+
+    /*************
+     * Getters / Setters *
+     *************/
+
+    public String getRenter() {
+        return renter;
+    }
+
+    public void setRenter(String renter) {
+        this.renter = renter;
+    }
+
+    public int getReservationCount() {
+        return reservationCount;
+    }
+
+    public void setReservationCount(int reservationCount) {
+        this.reservationCount = reservationCount;
+    }
+
+    public void add(int reservations) {
+        reservationCount += reservations;
+    }
+}
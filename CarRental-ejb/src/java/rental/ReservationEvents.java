@@ -0,0 +1,190 @@
+package rental;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Audit trail of the quotes, reservations and cancellations of all companies.
+ *
+ * Events go into a fixed ring of preallocated records: a company claims a
+ * slot with a compare-and-set, copies the fields of the event into it and
+ * publishes it, without locks or allocation. A single reader (see
+ * session.AuditLogWriter) drains the ring in the background. When the reader
+ * falls a whole ring behind, new events are counted and dropped rather than
+ * blocking a reservation.
+ *
+ * The trail is only kept when the system property rental.audit-log names the
+ * file to write it to; otherwise recording an event is a single branch.
+ */
+public final class ReservationEvents {
+
+    public static final String LOG_PROPERTY = "rental.audit-log";
+
+    public enum Kind {
+        QUOTED, RESERVED, CANCELLED
+    }
+
+    private static final boolean ENABLED = System.getProperty(LOG_PROPERTY) != null;
+    private static final int CAPACITY = 1 << 14;
+    private static final int MASK = CAPACITY - 1;
+
+    private static final Event[] slots = ENABLED ? new Event[CAPACITY] : null;
+    // the sequence number of the event each slot holds, -1 while it holds none
+    private static final AtomicLongArray published = ENABLED ? new AtomicLongArray(CAPACITY) : null;
+    private static final AtomicLong claimed = new AtomicLong();
+    private static final AtomicLong dropped = new AtomicLong();
+    // only written by the reader
+    private static volatile long drained;
+
+    static {
+        if (ENABLED) {
+            for (int i = 0; i < CAPACITY; i++) {
+                slots[i] = new Event();
+                published.set(i, -1);
+            }
+        }
+    }
+
+    private ReservationEvents() {
+    }
+
+    public static boolean isEnabled() {
+        return ENABLED;
+    }
+
+    /**
+     * Record a quote handed out to a client, not the offers it was chosen
+     * from.
+     */
+    public static void quoted(Quote quote) {
+        if (ENABLED)
+            record(Kind.QUOTED, quote.getRentalCompany(), quote.getCarRenter(), quote.getCarType(), 0,
+                    quote.getStartDay(), quote.getEndDay(), quote.getRentalPrice());
+    }
+
+    /**
+     * Record a reservation once the transaction that stored it committed,
+     * a rolled back booking never happened.
+     */
+    public static void reserved(Reservation res) {
+        if (ENABLED)
+            record(Kind.RESERVED, res.getRentalCompany(), res.getCarRenter(), res.getCarType(), res.getCarId(),
+                    res.getStartDay(), res.getEndDay(), res.getRentalPrice());
+    }
+
+    /**
+     * Record a cancellation once the transaction that removed it committed.
+     */
+    public static void cancelled(Reservation res) {
+        if (ENABLED)
+            record(Kind.CANCELLED, res.getRentalCompany(), res.getCarRenter(), res.getCarType(), res.getCarId(),
+                    res.getStartDay(), res.getEndDay(), res.getRentalPrice());
+    }
+
+    private static void record(Kind kind, String company, String renter, String carType, int carId,
+            int startDay, int endDay, double price) {
+        long sequence;
+        do {
+            sequence = claimed.get();
+            if (sequence - drained >= CAPACITY) {
+                dropped.incrementAndGet();
+                return;
+            }
+        } while (!claimed.compareAndSet(sequence, sequence + 1));
+        int slot = (int) sequence & MASK;
+        slots[slot].set(System.currentTimeMillis(), kind, company, renter, carType, carId, startDay, endDay, price);
+        published.lazySet(slot, sequence);
+    }
+
+    /**
+     * Copy the oldest event that was not read yet into the given record.
+     * Only one thread may read at a time.
+     * @return false if there is no published event to read
+     */
+    public static boolean poll(Event into) {
+        if (!ENABLED)
+            return false;
+        long sequence = drained;
+        int slot = (int) sequence & MASK;
+        if (published.get(slot) != sequence)
+            return false;
+        Event event = slots[slot];
+        into.set(event.time, event.kind, event.company, event.renter, event.carType, event.carId,
+                event.startDay, event.endDay, event.price);
+        drained = sequence + 1;
+        return true;
+    }
+
+    /**
+     * @return the number of events dropped since the last call
+     */
+    public static long takeDropped() {
+        return dropped.getAndSet(0);
+    }
+
+    /**
+     * A reusable event record, days as day numbers (see EpochDay). The car id
+     * of a quote is 0, it has no car yet.
+     */
+    public static final class Event {
+
+        private long time;
+        private Kind kind;
+        private String company;
+        private String renter;
+        private String carType;
+        private int carId;
+        private int startDay;
+        private int endDay;
+        private double price;
+
+        private void set(long time, Kind kind, String company, String renter, String carType, int carId,
+                int startDay, int endDay, double price) {
+            this.time = time;
+            this.kind = kind;
+            this.company = company;
+            this.renter = renter;
+            this.carType = carType;
+            this.carId = carId;
+            this.startDay = startDay;
+            this.endDay = endDay;
+            this.price = price;
+        }
+
+        public long getTime() {
+            return time;
+        }
+
+        public Kind getKind() {
+            return kind;
+        }
+
+        public String getCompany() {
+            return company;
+        }
+
+        public String getRenter() {
+            return renter;
+        }
+
+        public String getCarType() {
+            return carType;
+        }
+
+        public int getCarId() {
+            return carId;
+        }
+
+        public int getStartDay() {
+            return startDay;
+        }
+
+        public int getEndDay() {
+            return endDay;
+        }
+
+        public double getPrice() {
+            return price;
+        }
+    }
+}
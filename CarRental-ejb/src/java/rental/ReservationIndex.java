@@ -0,0 +1,83 @@
+package rental;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Interval index over the reservations of a single car.
+ *
+ * The reservations of one car never overlap, so ordering them by start day
+ * also orders them by end day. An overlap check for a period therefore only
+ * has to look at the reservation with the latest start day that is not after
+ * the end of that period, which a binary search finds in O(log n). The days
+ * are kept in plain int arrays, so a check allocates nothing.
+ */
+class ReservationIndex {
+
+    private int[] starts;
+    private int[] ends;
+    private Reservation[] reservations;
+    private int size;
+
+    ReservationIndex(Collection<Reservation> reservations) {
+        int capacity = Math.max(4, reservations.size());
+        this.starts = new int[capacity];
+        this.ends = new int[capacity];
+        this.reservations = new Reservation[capacity];
+        for (Reservation reservation : reservations) {
+            add(reservation);
+        }
+    }
+
+    /**
+     * Check whether any indexed reservation overlaps with the given period.
+     * Both bounds are inclusive, just like the original linear scan.
+     */
+    boolean overlaps(int firstDay, int lastDay) {
+        int candidate = lastStartingBefore(lastDay + 1);
+        return candidate >= 0 && ends[candidate] >= firstDay;
+    }
+
+    void add(Reservation reservation) {
+        if (size == starts.length) {
+            starts = Arrays.copyOf(starts, size * 2);
+            ends = Arrays.copyOf(ends, size * 2);
+            reservations = Arrays.copyOf(reservations, size * 2);
+        }
+        int at = lastStartingBefore(reservation.getStartDay()) + 1;
+        System.arraycopy(starts, at, starts, at + 1, size - at);
+        System.arraycopy(ends, at, ends, at + 1, size - at);
+        System.arraycopy(reservations, at, reservations, at + 1, size - at);
+        starts[at] = reservation.getStartDay();
+        ends[at] = reservation.getEndDay();
+        reservations[at] = reservation;
+        size++;
+    }
+
+    void remove(Reservation reservation) {
+        int at = lastStartingBefore(reservation.getStartDay() + 1);
+        if (at >= 0 && starts[at] == reservation.getStartDay() && reservation.equals(reservations[at])) {
+            System.arraycopy(starts, at + 1, starts, at, size - at - 1);
+            System.arraycopy(ends, at + 1, ends, at, size - at - 1);
+            System.arraycopy(reservations, at + 1, reservations, at, size - at - 1);
+            reservations[--size] = null;
+        }
+    }
+
+    /**
+     * @return the position of the last reservation starting before the
+     * given day, or -1 if there is none
+     */
+    private int lastStartingBefore(int day) {
+        int low = 0;
+        int high = size - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (starts[mid] < day)
+                low = mid + 1;
+            else
+                high = mid - 1;
+        }
+        return high;
+    }
+}
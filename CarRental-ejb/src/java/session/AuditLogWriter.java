@@ -0,0 +1,148 @@
+package session;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Locale;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import rental.ReservationEvents;
+
+/**
+ * Drains the reservation events into the audit log, one JSON object per
+ * line. The log rolls over to file.1 ... file.MAX_ROLLED_FILES once it grows
+ * past MAX_FILE_BYTES, the oldest file is dropped.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class AuditLogWriter {
+
+    private static final Logger logger = Logger.getLogger(AuditLogWriter.class.getName());
+    private static final long MAX_FILE_BYTES = 16 * 1024 * 1024;
+    private static final int MAX_ROLLED_FILES = 4;
+
+    private final ReservationEvents.Event event = new ReservationEvents.Event();
+    private final StringBuilder line = new StringBuilder(256);
+    private Path file;
+    private Writer out;
+    private long fileBytes;
+
+    @PostConstruct
+    public void init() {
+        if (!ReservationEvents.isEnabled())
+            return;
+        file = Paths.get(System.getProperty(ReservationEvents.LOG_PROPERTY));
+        try {
+            open();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Cannot open audit log " + file, e);
+        }
+    }
+
+    @Schedule(hour = "*", minute = "*", second = "*", persistent = false)
+    public synchronized void drain() {
+        if (out == null)
+            return;
+        try {
+            boolean written = false;
+            while (ReservationEvents.poll(event)) {
+                format(event);
+                out.append(line);
+                // close enough, the records are almost always ASCII
+                fileBytes += line.length();
+                written = true;
+                if (fileBytes >= MAX_FILE_BYTES)
+                    roll();
+            }
+            if (written)
+                out.flush();
+        } catch (IOException e) {
+            logger.log(Level.SEVERE, "Cannot write audit log " + file, e);
+        }
+        long dropped = ReservationEvents.takeDropped();
+        if (dropped > 0)
+            logger.log(Level.WARNING, "Dropped {0} reservation events, the audit log fell behind", dropped);
+    }
+
+    @PreDestroy
+    public synchronized void close() {
+        drain();
+        if (out == null)
+            return;
+        try {
+            out.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Cannot close audit log " + file, e);
+        }
+        out = null;
+    }
+
+    private void open() throws IOException {
+        out = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        fileBytes = Files.size(file);
+    }
+
+    private void roll() throws IOException {
+        out.close();
+        for (int i = MAX_ROLLED_FILES - 1; i >= 1; i--) {
+            Path older = rolled(i);
+            if (Files.exists(older))
+                Files.move(older, rolled(i + 1), StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.move(file, rolled(1), StandardCopyOption.REPLACE_EXISTING);
+        open();
+    }
+
+    private Path rolled(int number) {
+        return file.resolveSibling(file.getFileName() + "." + number);
+    }
+
+    private void format(ReservationEvents.Event event) {
+        line.setLength(0);
+        line.append("{\"time\":").append(event.getTime());
+        line.append(",\"event\":\"").append(event.getKind().name().toLowerCase(Locale.ROOT)).append('"');
+        field("company", event.getCompany());
+        field("renter", event.getRenter());
+        field("carType", event.getCarType());
+        if (event.getKind() != ReservationEvents.Kind.QUOTED)
+            line.append(",\"carId\":").append(event.getCarId());
+        line.append(",\"start\":\"").append(LocalDate.ofEpochDay(event.getStartDay())).append('"');
+        line.append(",\"end\":\"").append(LocalDate.ofEpochDay(event.getEndDay())).append('"');
+        line.append(",\"price\":").append(event.getPrice());
+        line.append("}\n");
+    }
+
+    private void field(String name, String value) {
+        line.append(",\"").append(name).append("\":");
+        if (value == null) {
+            line.append("null");
+            return;
+        }
+        line.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\')
+                line.append('\\').append(c);
+            else if (c < 0x20)
+                line.append(String.format("\\u%04x", (int) c));
+            else
+                line.append(c);
+        }
+        line.append('"');
+    }
+}
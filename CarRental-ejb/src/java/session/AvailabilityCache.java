@@ -0,0 +1,170 @@
+package session;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.transaction.TransactionSynchronizationRegistry;
+import rental.CarType;
+import rental.EpochDay;
+import rental.Reservation;
+
+/**
+ * Bounded LRU cache of the car types available in a period, keyed by the
+ * period. Reservations only evict the periods they overlap with, changes to
+ * the fleet clear the whole cache.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class AvailabilityCache {
+
+    private static final int MAX_PERIODS = 256;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactions;
+
+    // access ordered, so iteration starts at the least recently used period
+    private final LinkedHashMap<Period, List<CarType>> entries = new LinkedHashMap<Period, List<CarType>>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Period, List<CarType>> eldest) {
+            if (size() <= MAX_PERIODS)
+                return false;
+            evictions++;
+            return true;
+        }
+    };
+    // bumped by every invalidation, so results loaded before one are not stored after it
+    private long generation;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long invalidations;
+
+    /**
+     * Get the cached car types for the given period.
+     * @return the car types, or null when the period is not cached
+     */
+    public synchronized List<CarType> get(Date start, Date end) {
+        List<CarType> types = entries.get(new Period(start, end));
+        if (types == null)
+            misses++;
+        else
+            hits++;
+        return types;
+    }
+
+    /**
+     * Get the generation to pass to {@link #put} for a result that is about
+     * to be loaded.
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Cache the car types of the given period, unless the cache was
+     * invalidated since the given generation.
+     * @return an unmodifiable copy of the car types
+     */
+    public synchronized List<CarType> put(Date start, Date end, List<CarType> types, long loadedIn) {
+        List<CarType> copy = Collections.unmodifiableList(new ArrayList<>(types));
+        if (loadedIn == generation)
+            entries.put(new Period(start, end), copy);
+        return copy;
+    }
+
+    /**
+     * Evict the periods that overlap with the given reservations once the
+     * current transaction commits.
+     */
+    public void reservationsChanged(Collection<Reservation> reservations) {
+        final List<Period> changed = new ArrayList<>(reservations.size());
+        for (Reservation res : reservations) {
+            changed.add(new Period(res.getStartDate(), res.getEndDate()));
+        }
+        Transactions.afterCommit(transactions, new Runnable() {
+            @Override
+            public void run() {
+                evictOverlapping(changed);
+            }
+        });
+    }
+
+    /**
+     * Clear the cache, for changes that affect every period. Runs at once,
+     * callers that change the fleet in a transaction run it after commit.
+     */
+    public synchronized void invalidateAll() {
+        generation++;
+        invalidations += entries.size();
+        entries.clear();
+    }
+
+    public synchronized Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new HashMap<>();
+        statistics.put("AvailabilityHits", hits);
+        statistics.put("AvailabilityMisses", misses);
+        statistics.put("AvailabilityHitPercent", hits + misses == 0 ? 0 : 100 * hits / (hits + misses));
+        statistics.put("AvailabilityEvictions", evictions);
+        statistics.put("AvailabilityInvalidations", invalidations);
+        statistics.put("AvailabilitySize", (long) entries.size());
+        return statistics;
+    }
+
+    private synchronized void evictOverlapping(List<Period> changed) {
+        generation++;
+        for (Iterator<Period> it = entries.keySet().iterator(); it.hasNext(); ) {
+            Period cached = it.next();
+            for (Period period : changed) {
+                if (cached.overlaps(period)) {
+                    it.remove();
+                    invalidations++;
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * A period in whole days, like the reservations, so two windows that
+     * differ only in the time of day share an entry and a reservation
+     * evicts every window that touches one of its days.
+     */
+    private static class Period {
+
+        private final int start;
+        private final int end;
+
+        Period(Date start, Date end) {
+            this.start = EpochDay.of(start);
+            this.end = EpochDay.of(end);
+        }
+
+        // bounds inclusive, like the availability checks
+        boolean overlaps(Period other) {
+            return start <= other.end && other.start <= end;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Period))
+                return false;
+            Period other = (Period) obj;
+            return start == other.start && end == other.end;
+        }
+
+        @Override
+        public int hashCode() {
+            return start * 31 + end;
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package session;
+
+import org.eclipse.persistence.config.SessionCustomizer;
+import org.eclipse.persistence.sessions.Session;
+import org.eclipse.persistence.tools.profiler.PerformanceMonitor;
+
+/**
+ * Turns on the EclipseLink performance monitor, which counts the hits and
+ * misses of the shared cache for ManagerSession.getCacheStatistics, only
+ * when the system property rental.cache-statistics is set. It times every
+ * query and transaction, so it stays off in production.
+ */
+public class CacheStatisticsCustomizer implements SessionCustomizer {
+
+    public static final String PROPERTY = "rental.cache-statistics";
+
+    @Override
+    public void customize(Session session) throws Exception {
+        if (Boolean.getBoolean(PROPERTY))
+            session.setProfiler(new PerformanceMonitor());
+    }
+}
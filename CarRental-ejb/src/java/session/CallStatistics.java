@@ -0,0 +1,80 @@
+package session;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * The latency histograms of all intercepted session bean methods, see
+ * {@link CallStatisticsInterceptor}. They live outside any bean, so
+ * recording a call costs a map lookup and a few atomic increments instead
+ * of another container invocation.
+ */
+final class CallStatistics {
+
+    private static final ConcurrentHashMap<Method, Window> windows = new ConcurrentHashMap<>();
+
+    private CallStatistics() {
+    }
+
+    static void record(Method method, long nanos, boolean failed) {
+        Window window = windows.get(method);
+        if (window == null) {
+            Window created = new Window(label(method));
+            window = windows.putIfAbsent(method, created);
+            if (window == null)
+                window = created;
+        }
+        window.histogram.record(nanos / 1000, failed);
+    }
+
+    /**
+     * Get the statistics of every method called in the current window,
+     * ordered by method.
+     * @param reset whether to start a new window for every method
+     */
+    static List<MethodStatistics> snapshot(boolean reset) {
+        List<MethodStatistics> statistics = new ArrayList<>(windows.size());
+        for (Map.Entry<Method, Window> entry : windows.entrySet()) {
+            Window window = entry.getValue();
+            LatencyHistogram histogram = window.histogram;
+            // calls still running into the old histogram are not counted in either window
+            if (reset)
+                window.histogram = new LatencyHistogram();
+            statistics.add(histogram.snapshot(window.label));
+        }
+        Collections.sort(statistics, new Comparator<MethodStatistics>() {
+            @Override
+            public int compare(MethodStatistics left, MethodStatistics right) {
+                return left.getMethod().compareTo(right.getMethod());
+            }
+        });
+        return statistics;
+    }
+
+    private static String label(Method method) {
+        StringBuilder label = new StringBuilder(method.getDeclaringClass().getSimpleName())
+                .append('.').append(method.getName()).append('(');
+        Class<?>[] parameters = method.getParameterTypes();
+        for (int i = 0; i < parameters.length; i++) {
+            if (i > 0)
+                label.append(',');
+            label.append(parameters[i].getSimpleName());
+        }
+        return label.append(')').toString();
+    }
+
+    private static class Window {
+
+        private final String label;
+        private volatile LatencyHistogram histogram = new LatencyHistogram();
+
+        Window(String label) {
+            this.label = label;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package session;
+
+import javax.interceptor.AroundInvoke;
+import javax.interceptor.InvocationContext;
+
+/**
+ * Times every business method of the session beans it is attached to and
+ * counts the calls that end in an exception.
+ */
+public class CallStatisticsInterceptor {
+
+    @AroundInvoke
+    public Object measure(InvocationContext invocation) throws Exception {
+        long start = System.nanoTime();
+        boolean failed = true;
+        try {
+            Object result = invocation.proceed();
+            failed = false;
+            return result;
+        } finally {
+            CallStatistics.record(invocation.getMethod(), System.nanoTime() - start, failed);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package session;
+
+import java.util.List;
+
+/**
+ * JMX view of the session bean call statistics, registered as
+ * rental:type=CallStatistics.
+ */
+public interface CallStatisticsMXBean {
+
+    List<MethodStatistics> getMethodStatistics();
+
+    /**
+     * Start a new window for every method.
+     */
+    void reset();
+}
@@ -0,0 +1,60 @@
+package session;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.Startup;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Publishes the session bean call statistics through JMX for as long as the
+ * application is deployed.
+ */
+@Singleton
+@Startup
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class CallStatisticsMonitor implements CallStatisticsMXBean {
+
+    private static final Logger logger = Logger.getLogger(CallStatisticsMonitor.class.getName());
+
+    private ObjectName name;
+
+    @PostConstruct
+    public void register() {
+        try {
+            name = new ObjectName("rental:type=CallStatistics");
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Cannot publish the call statistics through JMX", e);
+            name = null;
+        }
+    }
+
+    @PreDestroy
+    public void unregister() {
+        if (name == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Cannot withdraw the call statistics from JMX", e);
+        }
+    }
+
+    @Override
+    public List<MethodStatistics> getMethodStatistics() {
+        return CallStatistics.snapshot(false);
+    }
+
+    @Override
+    public void reset() {
+        CallStatistics.snapshot(true);
+    }
+}
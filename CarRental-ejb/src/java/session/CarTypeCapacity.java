@@ -0,0 +1,102 @@
+package session;
+
+import java.util.Arrays;
+
+/**
+ * Day-granular capacity of all cars of one car type in one company.
+ *
+ * A dynamic segment tree over epoch days holds the number of reserved cars
+ * per day. Reserving or releasing a period is a range update and the busiest
+ * day of a period is a range maximum, both in O(log days). Nodes are only
+ * allocated for the parts of the calendar that actually carry reservations.
+ * Not thread-safe, see FreeCapacity.
+ */
+class CarTypeCapacity {
+
+    // covers roughly 2870 years on either side of 1970
+    private static final int FIRST_DAY = -(1 << 20);
+    private static final int LAST_DAY = (1 << 20) - 1;
+    // node 0 is the root, so it doubles as "no child"
+    private static final int NONE = 0;
+
+    private final int cars;
+    private int[] left = new int[64];
+    private int[] right = new int[64];
+    private int[] busiest = new int[64];
+    private int[] added = new int[64];
+    private int nodes = 1;
+
+    CarTypeCapacity(int cars) {
+        this.cars = cars;
+    }
+
+    void reserve(int firstDay, int lastDay) {
+        update(0, FIRST_DAY, LAST_DAY, firstDay, lastDay, 1);
+    }
+
+    void release(int firstDay, int lastDay) {
+        update(0, FIRST_DAY, LAST_DAY, firstDay, lastDay, -1);
+    }
+
+    /**
+     * Get the lowest number of free cars on any day of the given period,
+     * bounds inclusive.
+     */
+    int getFreeCars(int firstDay, int lastDay) {
+        if (firstDay > lastDay)
+            return cars;
+        return cars - query(0, FIRST_DAY, LAST_DAY, firstDay, lastDay);
+    }
+
+    private void update(int node, int low, int high, int from, int to, int delta) {
+        if (from <= low && high <= to) {
+            added[node] += delta;
+            busiest[node] += delta;
+            return;
+        }
+        int mid = (low + high) >> 1;
+        if (from <= mid) {
+            if (left[node] == NONE) {
+                // allocate first, newNode() may replace the arrays
+                int child = newNode();
+                left[node] = child;
+            }
+            update(left[node], low, mid, from, to, delta);
+        }
+        if (to > mid) {
+            if (right[node] == NONE) {
+                int child = newNode();
+                right[node] = child;
+            }
+            update(right[node], mid + 1, high, from, to, delta);
+        }
+        busiest[node] = added[node] + Math.max(busiest(left[node]), busiest(right[node]));
+    }
+
+    private int query(int node, int low, int high, int from, int to) {
+        if (from <= low && high <= to)
+            return busiest[node];
+        int mid = (low + high) >> 1;
+        int max = 0;
+        if (from <= mid && left[node] != NONE)
+            max = query(left[node], low, mid, from, to);
+        if (to > mid && right[node] != NONE)
+            max = Math.max(max, query(right[node], mid + 1, high, from, to));
+        return added[node] + max;
+    }
+
+    private int busiest(int node) {
+        return node == NONE ? 0 : busiest[node];
+    }
+
+    private int newNode() {
+        if (nodes == left.length) {
+            int size = nodes * 2;
+            left = Arrays.copyOf(left, size);
+            right = Arrays.copyOf(right, size);
+            busiest = Arrays.copyOf(busiest, size);
+            added = Arrays.copyOf(added, size);
+        }
+        return nodes++;
+    }
+}
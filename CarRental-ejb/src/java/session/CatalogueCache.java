@@ -0,0 +1,99 @@
+package session;
+
+import java.util.HashMap;
+import java.util.Map;
+import javax.annotation.Resource;
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.persistence.Cache;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.TransactionSynchronizationRegistry;
+import org.eclipse.persistence.jpa.JpaEntityManager;
+import org.eclipse.persistence.sessions.IdentityMapAccessor;
+import org.eclipse.persistence.sessions.SessionProfiler;
+import org.eclipse.persistence.tools.profiler.PerformanceMonitor;
+import rental.CarRentalCompany;
+import rental.FreeGaps;
+
+/**
+ * Invalidation and statistics of the cached company and car type catalogue
+ * in the shared cache of the persistence unit, and of the availability
+ * results, free capacities and car calendars derived from it.
+ */
+@Stateless
+public class CatalogueCache {
+
+    // named queries whose results are kept in the query results cache
+    private static final String[] CATALOGUE_QUERIES = {
+        "getAllRentalCompanyNames", "getAllCarTypesInCompany", "getAllIdsForTypeInCompany"
+    };
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactions;
+
+    @EJB
+    private AvailabilityCache availabilityCache;
+
+    @EJB
+    private FreeCapacity capacity;
+
+    /**
+     * Drop the cached catalogue entries affected by adding or removing the
+     * given company, once the current transaction commits.
+     */
+    public void evict(final String companyName) {
+        final Cache cache = em.getEntityManagerFactory().getCache();
+        final IdentityMapAccessor queryCache = em.unwrap(JpaEntityManager.class).getServerSession().getIdentityMapAccessor();
+        Transactions.afterCommit(transactions, new Runnable() {
+            @Override
+            public void run() {
+                cache.evict(CarRentalCompany.class, companyName);
+                for (String query : CATALOGUE_QUERIES) {
+                    queryCache.clearQueryCache(query);
+                }
+                availabilityCache.invalidateAll();
+                capacity.invalidate(companyName);
+                FreeGaps.invalidate(companyName);
+            }
+        });
+    }
+
+    /**
+     * Drop all cached companies and catalogue queries once the current
+     * transaction commits.
+     */
+    public void evictAll() {
+        final Cache cache = em.getEntityManagerFactory().getCache();
+        final IdentityMapAccessor queryCache = em.unwrap(JpaEntityManager.class).getServerSession().getIdentityMapAccessor();
+        Transactions.afterCommit(transactions, new Runnable() {
+            @Override
+            public void run() {
+                cache.evict(CarRentalCompany.class);
+                for (String query : CATALOGUE_QUERIES) {
+                    queryCache.clearQueryCache(query);
+                }
+                availabilityCache.invalidateAll();
+                capacity.invalidateAll();
+                FreeGaps.invalidateAll();
+            }
+        });
+    }
+
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new HashMap<>();
+        SessionProfiler profiler = em.unwrap(JpaEntityManager.class).getServerSession().getProfiler();
+        if (profiler instanceof PerformanceMonitor) {
+            for (Map.Entry<String, Object> timing : ((PerformanceMonitor) profiler).getOperationTimings().entrySet()) {
+                // counters are named Counter:CacheHits, Counter:CacheMisses, ...
+                if (timing.getKey().startsWith("Counter:Cache"))
+                    statistics.put(timing.getKey().substring("Counter:".length()), ((Number) timing.getValue()).longValue());
+            }
+        }
+        statistics.putAll(availabilityCache.getStatistics());
+        return statistics;
+    }
+}
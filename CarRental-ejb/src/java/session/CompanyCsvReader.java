@@ -0,0 +1,112 @@
+package session;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+import java.util.List;
+import rental.CarType;
+
+/**
+ * Streaming reader for company .csv files. Only the current line is kept in
+ * memory, so files can be read regardless of the size of the fleet.
+ *
+ * <pre>
+ * # comment
+ * -name,region:region
+ * type name,nb of seats,trunk space in liters,price per day,smoking,number of cars of this type
+ * </pre>
+ */
+class CompanyCsvReader implements Closeable {
+
+    // fields of the car type lines
+    private static final int FIELDS = 6;
+
+    private final BufferedReader in;
+    private final String[] fields = new String[FIELDS];
+    private int lineNumber;
+    private String name;
+    private List<String> regions;
+    private CarType type;
+    private int count;
+
+    CompanyCsvReader(Reader in) {
+        this.in = new BufferedReader(in);
+    }
+
+    /**
+     * Advance to the next car type line, picking up the company line on the way.
+     * @return false when the end of the file is reached
+     */
+    boolean nextType() throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNumber++;
+            if (line.isEmpty() || line.startsWith("#")) {
+                // comment -> skip
+            } else if (line.startsWith("-")) {
+                int comma = line.indexOf(',');
+                if (comma < 0)
+                    throw new IOException("Line " + lineNumber + ": expected -name,regions");
+                name = line.substring(1, comma);
+                regions = Arrays.asList(line.substring(comma + 1).split(":"));
+            } else {
+                split(line);
+                try {
+                    //create new car type from first 5 fields
+                    type = new CarType(fields[0],
+                            Integer.parseInt(fields[1]),
+                            Float.parseFloat(fields[2]),
+                            Double.parseDouble(fields[3]),
+                            Boolean.parseBoolean(fields[4]));
+                    //the 6th field holds the number of cars of this type
+                    count = Integer.parseInt(fields[5]);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Split a car type line on commas into the reused field array, without
+     * the regex and enumeration overhead of split() and StringTokenizer.
+     */
+    private void split(String line) throws IOException {
+        int start = 0;
+        for (int i = 0; i < FIELDS - 1; i++) {
+            int comma = line.indexOf(',', start);
+            if (comma < 0)
+                throw new IOException("Line " + lineNumber + ": expected " + FIELDS + " fields");
+            fields[i] = line.substring(start, comma);
+            start = comma + 1;
+        }
+        // ignore anything after the last field, like StringTokenizer did
+        int comma = line.indexOf(',', start);
+        fields[FIELDS - 1] = line.substring(start, comma < 0 ? line.length() : comma);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    List<String> getRegions() {
+        return regions;
+    }
+
+    CarType getType() {
+        return type;
+    }
+
+    int getCount() {
+        return count;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
@@ -0,0 +1,83 @@
+package session;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.LinkedHashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import rental.Car;
+import rental.CarType;
+
+/**
+ * A company as described by a .csv file: its name, regions and the number
+ * of cars of each car type. Cars are only created when the company is
+ * persisted, so a parsed file stays small.
+ */
+public class CompanyFleet {
+
+    private final String name;
+    private final List<String> regions;
+    private final Map<CarType, Integer> types;
+
+    private CompanyFleet(String name, List<String> regions, Map<CarType, Integer> types) {
+        this.name = name;
+        this.regions = regions;
+        this.types = types;
+    }
+
+    /**
+     * Read and validate a complete company file.
+     * @throws IOException when the file cannot be read or is not a valid company
+     */
+    static CompanyFleet read(Reader reader) throws IOException {
+        Map<String, CarType> byName = new LinkedHashMap<>();
+        Map<CarType, Integer> types = new LinkedHashMap<>();
+        try (CompanyCsvReader in = new CompanyCsvReader(reader)) {
+            while (in.nextType()) {
+                CarType type = in.getType();
+                if (in.getName() == null)
+                    throw new IOException("Car type " + type.getName() + " precedes the company line");
+                if (in.getCount() < 0 || type.getNbOfSeats() <= 0 || type.getRentalPricePerDay() < 0)
+                    throw new IOException("Invalid car type " + type.getName());
+                if (byName.put(type.getName(), type) != null)
+                    throw new IOException("Duplicate car type " + type.getName());
+                types.put(type, in.getCount());
+            }
+            if (types.isEmpty())
+                throw new IOException("No car types");
+            if (in.getName().isEmpty() || in.getRegions().isEmpty())
+                throw new IOException("No company name or regions");
+            return new CompanyFleet(in.getName(), new LinkedList<>(in.getRegions()), types);
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public List<String> getRegions() {
+        return regions;
+    }
+
+    public int getNbOfCars() {
+        int cars = 0;
+        for (int count : types.values()) {
+            cars += count;
+        }
+        return cars;
+    }
+
+    /**
+     * Create new cars for the whole fleet.
+     */
+    public List<Car> createCars() {
+        List<Car> cars = new LinkedList<>();
+        for (Map.Entry<CarType, Integer> type : types.entrySet()) {
+            for (int i = type.getValue(); i > 0; i--) {
+                cars.add(new Car(type.getKey()));
+            }
+        }
+        return cars;
+    }
+}
@@ -0,0 +1,119 @@
+package session;
+
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import javax.annotation.Resource;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
+import javax.ejb.EJB;
+import javax.ejb.SessionContext;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import rental.CarRentalCompany;
+import rental.Quote;
+import rental.ReservationConstraints;
+
+/**
+ * Creates quotes for a single company, asynchronously so a reservation
+ * session can ask all eligible companies at the same time.
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class CompanyQuoter {
+
+    @Resource
+    private SessionContext context;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @EJB
+    private QuoteHolds holds;
+
+    @EJB
+    private FreeCapacity capacity;
+
+    /**
+     * Try to create a quote with the given company, holding a free car for it
+     * @return a future holding the quote, or null if the company has no free
+     * car of the requested type that is not held yet, or does not exist anymore
+     */
+    @Asynchronous
+    public Future<Quote> quote(String company, ReservationConstraints constraints, String renter) {
+        // a company with a fully booked day in the period is ruled out without a query
+        if (capacity.getFreeCars(company, constraints.getCarType(), constraints.getStartDay(), constraints.getEndDay()) == 0)
+            return new AsyncResult<>(null);
+        // the overlap check runs in the database, so no reservations are loaded
+        List<Integer> free = em.createNamedQuery("getFreeCarIdsOfTypeInCompany", Integer.class)
+                .setParameter("companyName", company)
+                .setParameter("type", constraints.getCarType())
+                .setParameter("start", constraints.getStartDate())
+                .setParameter("end", constraints.getEndDate())
+                .getResultList();
+        long hold = holds.hold(company, free, constraints.getStartDay(), constraints.getEndDay());
+        if (hold == 0)
+            return new AsyncResult<>(null);
+        Quote quote = null;
+        try {
+            CarRentalCompany crc = em.find(CarRentalCompany.class, company);
+            // nobody waits for the quote anymore when the caller gave up on it
+            if (crc != null && !context.wasCancelCalled()) {
+                quote = crc.priceQuote(constraints, renter);
+                quote.setHoldId(hold);
+            }
+            // a cancelled future never hands out its quote, so nobody else can release it
+            if (context.wasCancelCalled())
+                quote = null;
+        } finally {
+            if (quote == null)
+                holds.release(hold);
+        }
+        return new AsyncResult<>(quote);
+    }
+
+    /**
+     * Wait for quotes that arrived too late to be offered and release the
+     * cars they hold, in the background so the caller does not wait. Every
+     * offer is handled on its own, one that failed or was cancelled does not
+     * keep the others holding their cars.
+     */
+    @Asynchronous
+    public void releaseLateQuotes(List<Future<Quote>> late) {
+        for (Future<Quote> offer : late) {
+            // a cancelled quote releases its own hold, see quote
+            if (offer.isCancelled())
+                continue;
+            try {
+                Quote quote = offer.get(QuoteHolds.HOLD_TTL_MILLIS, TimeUnit.MILLISECONDS);
+                if (quote != null)
+                    holds.release(quote.getHoldId());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (CancellationException | ExecutionException | TimeoutException e) {
+                // no quote, or one whose hold has expired by now
+            }
+        }
+    }
+
+    /**
+     * Count the cars of the given type in the given company that have no
+     * reservation overlapping with the given period, in the database.
+     */
+    public long countFreeCars(String company, String carType, Date start, Date end) {
+        return (Long) em.createNamedQuery("countFreeCarsOfTypeInCompany")
+                .setParameter("companyName", company)
+                .setParameter("type", carType)
+                .setParameter("start", start)
+                .setParameter("end", end)
+                .getSingleResult();
+    }
+}
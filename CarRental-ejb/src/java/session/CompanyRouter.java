@@ -0,0 +1,195 @@
+package session;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import javax.annotation.PostConstruct;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.TransactionSynchronizationRegistry;
+import rental.CarRentalCompany;
+import rental.CarType;
+
+/**
+ * Routing index from (region, car type) to the companies that can serve it,
+ * so quotes are only requested from companies that offer the car type in
+ * the region, and a per-region list of all offered car types sorted by
+ * price. Lookups read an immutable snapshot, changes replace it.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class CompanyRouter {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactions;
+
+    // company name -> what it offers, the source both indexes are derived from
+    private final Map<String, Catalogue> catalogues = new HashMap<>();
+    private volatile Routes routes = new Routes(catalogues);
+
+    @PostConstruct
+    public synchronized void load() {
+        catalogues.clear();
+        for (CarRentalCompany crc : em.createNamedQuery("getAllRentalCompanies", CarRentalCompany.class).getResultList()) {
+            catalogues.put(crc.getName(), new Catalogue(crc));
+        }
+        routes = new Routes(catalogues);
+    }
+
+    /**
+     * Get the names of all companies that offer the given car type in the
+     * given region. Companies removed in a concurrent transaction may still
+     * be listed, callers should skip companies they cannot find.
+     */
+    public List<String> getCandidates(String region, String carType) {
+        Map<String, List<String>> types = routes.companies.get(region);
+        List<String> companies = types == null ? null : types.get(carType);
+        return companies == null ? Collections.<String>emptyList() : companies;
+    }
+
+    /**
+     * Get all car types offered in the given region by any company, cheapest
+     * first.
+     */
+    public List<Offer> getOffersByPrice(String region) {
+        List<Offer> offers = routes.offersByPrice.get(region);
+        return offers == null ? Collections.<Offer>emptyList() : offers;
+    }
+
+    /**
+     * Route to the given company once the current transaction commits.
+     */
+    public void companyAdded(CarRentalCompany crc) {
+        final String name = crc.getName();
+        final Catalogue catalogue = new Catalogue(crc);
+        Transactions.afterCommit(transactions, new Runnable() {
+            @Override
+            public void run() {
+                update(name, catalogue);
+            }
+        });
+    }
+
+    /**
+     * Stop routing to the given company once the current transaction commits.
+     */
+    public void companyRemoved(final String name) {
+        Transactions.afterCommit(transactions, new Runnable() {
+            @Override
+            public void run() {
+                update(name, null);
+            }
+        });
+    }
+
+    private synchronized void update(String name, Catalogue catalogue) {
+        if (catalogue == null)
+            catalogues.remove(name);
+        else
+            catalogues.put(name, catalogue);
+        routes = new Routes(catalogues);
+    }
+
+    /**
+     * A car type offered by a company at a given price per day.
+     */
+    public static class Offer {
+
+        private final String company;
+        private final String carType;
+        private final double rentalPricePerDay;
+
+        Offer(String company, String carType, double rentalPricePerDay) {
+            this.company = company;
+            this.carType = carType;
+            this.rentalPricePerDay = rentalPricePerDay;
+        }
+
+        public String getCompany() {
+            return company;
+        }
+
+        public String getCarType() {
+            return carType;
+        }
+
+        public double getRentalPricePerDay() {
+            return rentalPricePerDay;
+        }
+    }
+
+    private static class Catalogue {
+
+        private final List<String> regions;
+        // car type name -> price per day
+        private final Map<String, Double> prices = new HashMap<>();
+
+        Catalogue(CarRentalCompany crc) {
+            regions = new ArrayList<>(crc.getRegions());
+            for (CarType type : crc.getCarTypes()) {
+                prices.put(type.getName(), type.getRentalPricePerDay());
+            }
+        }
+    }
+
+    private static class Routes {
+
+        // region -> car type name -> company names
+        private final Map<String, Map<String, List<String>>> companies = new HashMap<>();
+        // region -> offers, cheapest first
+        private final Map<String, List<Offer>> offersByPrice = new HashMap<>();
+
+        Routes(Map<String, Catalogue> catalogues) {
+            Map<String, Map<String, Set<String>>> byRegion = new HashMap<>();
+            for (Map.Entry<String, Catalogue> company : catalogues.entrySet()) {
+                for (String region : company.getValue().regions) {
+                    Map<String, Set<String>> byType = byRegion.get(region);
+                    List<Offer> offers = offersByPrice.get(region);
+                    if (byType == null) {
+                        byType = new HashMap<>();
+                        byRegion.put(region, byType);
+                        offers = new ArrayList<>();
+                        offersByPrice.put(region, offers);
+                    }
+                    for (Map.Entry<String, Double> type : company.getValue().prices.entrySet()) {
+                        Set<String> names = byType.get(type.getKey());
+                        if (names == null) {
+                            names = new HashSet<>();
+                            byType.put(type.getKey(), names);
+                        }
+                        if (names.add(company.getKey()))
+                            offers.add(new Offer(company.getKey(), type.getKey(), type.getValue()));
+                    }
+                }
+            }
+            for (Map.Entry<String, Map<String, Set<String>>> region : byRegion.entrySet()) {
+                Map<String, List<String>> byType = new HashMap<>();
+                for (Map.Entry<String, Set<String>> type : region.getValue().entrySet()) {
+                    byType.put(type.getKey(), Collections.unmodifiableList(new ArrayList<>(type.getValue())));
+                }
+                companies.put(region.getKey(), byType);
+            }
+            for (Map.Entry<String, List<Offer>> region : offersByPrice.entrySet()) {
+                Collections.sort(region.getValue(), new Comparator<Offer>() {
+                    @Override
+                    public int compare(Offer o1, Offer o2) {
+                        return Double.compare(o1.getRentalPricePerDay(), o2.getRentalPricePerDay());
+                    }
+                });
+                region.setValue(Collections.unmodifiableList(region.getValue()));
+            }
+        }
+    }
+}
@@ -0,0 +1,115 @@
+package session;
+
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Future;
+import javax.ejb.AsyncResult;
+import javax.ejb.Asynchronous;
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import rental.Car;
+import rental.CarRentalCompany;
+import rental.CarType;
+import rental.FleetImport;
+
+/**
+ * Persists a fleet in chunks, each in its own transaction, and records the
+ * progress together with every chunk. Small fleets of a bulk import are
+ * persisted whole, each company in its own transaction.
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+public class FleetImporter {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @EJB
+    private CompanyRouter router;
+
+    @EJB
+    private CatalogueCache catalogueCache;
+
+    /**
+     * Persist a complete company, asynchronously so the companies of a bulk
+     * import are stored at the same time.
+     * @return a future holding the number of cars of the company
+     */
+    @Asynchronous
+    public Future<Integer> add(CompanyFleet fleet) {
+        if (em.find(CarRentalCompany.class, fleet.getName()) != null)
+            throw new IllegalStateException("Company " + fleet.getName() + " already exists");
+        CarRentalCompany crc = new CarRentalCompany(fleet.getName(), fleet.getRegions(), fleet.createCars());
+        em.persist(crc);
+        router.companyAdded(crc);
+        catalogueCache.evict(fleet.getName());
+        return new AsyncResult<>(crc.getCars().size());
+    }
+
+    /**
+     * Create the company without cars, or pick up an unfinished import of it
+     * from the same source. The company is not listed or routed to until
+     * the import is finished.
+     * @return the number of cars that were already imported
+     */
+    public long start(String companyName, List<String> regions, String source) {
+        FleetImport progress = em.find(FleetImport.class, companyName);
+        if (progress != null) {
+            if (progress.isCompleted())
+                throw new IllegalStateException("Company " + companyName + " was already imported");
+            // the resume position counts cars in the order of the original source
+            if (!progress.getSource().equals(source))
+                throw new IllegalStateException("Company " + companyName + " is being imported from "
+                        + progress.getSource() + ", not from " + source);
+            return progress.getCarsImported();
+        }
+        if (em.find(CarRentalCompany.class, companyName) != null)
+            throw new IllegalStateException("Company " + companyName + " already exists");
+        em.persist(new CarRentalCompany(companyName, new LinkedList<String>(regions), new LinkedList<Car>()));
+        em.persist(new FleetImport(companyName, source));
+        return 0;
+    }
+
+    /**
+     * Add the given number of cars of the given type to the company.
+     * @param carsImported the total number of imported cars after this chunk
+     */
+    public void importChunk(String companyName, CarType type, int cars, long carsImported) {
+        CarRentalCompany crc = em.find(CarRentalCompany.class, companyName);
+        List<CarType> existing = em.createNamedQuery("getCarTypeInCompany", CarType.class)
+                .setParameter("companyName", companyName)
+                .setParameter("type", type.getName())
+                .getResultList();
+        if (existing.isEmpty()) {
+            em.persist(type);
+            crc.getCarTypes().add(type);
+        } else {
+            type = existing.get(0);
+        }
+        for (int i = 0; i < cars; i++) {
+            Car car = new Car(type);
+            em.persist(car);
+            // the lazy car list is not instantiated by adding to it, so this does not load the fleet
+            crc.addCar(car);
+        }
+        em.find(FleetImport.class, companyName).setCarsImported(carsImported);
+        em.flush();
+        em.clear();
+    }
+
+    public void finish(String companyName) {
+        em.find(FleetImport.class, companyName).setCompleted(true);
+        router.companyAdded(em.find(CarRentalCompany.class, companyName));
+        catalogueCache.evict(companyName);
+    }
+
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public long getProgress(String companyName) {
+        FleetImport progress = em.find(FleetImport.class, companyName);
+        return progress == null ? 0 : progress.getCarsImported();
+    }
+}
@@ -0,0 +1,129 @@
+package session;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Singleton;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import javax.transaction.TransactionSynchronizationRegistry;
+import rental.EpochDay;
+import rental.Reservation;
+
+/**
+ * The number of free cars per day of every car type of every company, so a
+ * company or car type without a free car in a period is ruled out in
+ * O(log days), without asking the database about its cars.
+ *
+ * The capacity of a car type is loaded from the database the first time it
+ * is asked for, and then kept up to date with every committed booking.
+ * Changes to the cars or reservations of a company outside a booking drop
+ * its capacities (see CatalogueCache).
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class FreeCapacity {
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactions;
+
+    // company name -> car type name -> capacity, guarded by this
+    private final Map<String, Map<String, CarTypeCapacity>> companies = new HashMap<>();
+    // bumped by every change, so a capacity loaded meanwhile is known to be stale
+    private long changes;
+
+    /**
+     * Get the lowest number of free cars of the given type on any day of the
+     * given period, with day numbers (see EpochDay), bounds inclusive. A free
+     * car on every day does not mean that one car is free during the whole
+     * period, so this only rules car types out: at 0 there is certainly no
+     * free car.
+     */
+    @TransactionAttribute(TransactionAttributeType.SUPPORTS)
+    public int getFreeCars(String company, String carType, int firstDay, int lastDay) {
+        long loadedIn;
+        synchronized (this) {
+            Map<String, CarTypeCapacity> types = companies.get(company);
+            CarTypeCapacity capacity = types == null ? null : types.get(carType);
+            if (capacity != null)
+                return capacity.getFreeCars(firstDay, lastDay);
+            loadedIn = changes;
+        }
+        // loaded outside the lock, the query may take a while
+        CarTypeCapacity capacity = load(company, carType);
+        synchronized (this) {
+            if (loadedIn == changes) {
+                Map<String, CarTypeCapacity> types = companies.get(company);
+                if (types == null) {
+                    types = new HashMap<>();
+                    companies.put(company, types);
+                }
+                types.put(carType, capacity);
+            }
+            return capacity.getFreeCars(firstDay, lastDay);
+        }
+    }
+
+    /**
+     * Take the given reservations into the capacities once the current
+     * transaction commits.
+     */
+    public void reservationsChanged(final Collection<Reservation> reservations) {
+        Transactions.afterCommit(transactions, new Runnable() {
+            @Override
+            public void run() {
+                reserve(reservations);
+            }
+        });
+    }
+
+    /**
+     * Drop the capacities of the given company. Runs at once, callers that
+     * change the company in a transaction run it after commit.
+     */
+    public synchronized void invalidate(String company) {
+        changes++;
+        companies.remove(company);
+    }
+
+    public synchronized void invalidateAll() {
+        changes++;
+        companies.clear();
+    }
+
+    private synchronized void reserve(Collection<Reservation> reservations) {
+        changes++;
+        for (Reservation res : reservations) {
+            Map<String, CarTypeCapacity> types = companies.get(res.getRentalCompany());
+            CarTypeCapacity capacity = types == null ? null : types.get(res.getCarType());
+            if (capacity != null)
+                capacity.reserve(res.getStartDay(), res.getEndDay());
+        }
+    }
+
+    private CarTypeCapacity load(String company, String carType) {
+        long cars = em.createNamedQuery("countCarsOfTypeInCompany", Long.class)
+                .setParameter("companyName", company)
+                .setParameter("type", carType)
+                .getSingleResult();
+        CarTypeCapacity capacity = new CarTypeCapacity((int) cars);
+        List<Object[]> periods = em.createNamedQuery("getReservationPeriodsOfTypeInCompany", Object[].class)
+                .setParameter("companyName", company)
+                .setParameter("type", carType)
+                .getResultList();
+        for (Object[] period : periods) {
+            capacity.reserve(EpochDay.of((Date) period[0]), EpochDay.of((Date) period[1]));
+        }
+        return capacity;
+    }
+}
@@ -0,0 +1,88 @@
+package session;
+
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongBinaryOperator;
+
+/**
+ * Lock-free latency histogram of one method over one statistics window.
+ *
+ * Latencies are counted in microseconds in log-linear buckets, like an
+ * HdrHistogram with two significant digits: values below 64 each get their
+ * own bucket, and every further power of two is split into 32 buckets. That
+ * keeps the relative error near 3% over the whole range of a long, in less
+ * than 2000 counters.
+ */
+class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = (64 - SUB_BUCKET_BITS) * SUB_BUCKETS;
+
+    private final long start = System.currentTimeMillis();
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder exceptions = new LongAdder();
+    private final LongAdder totalMicros = new LongAdder();
+    private final LongAccumulator maxMicros = new LongAccumulator(new LongBinaryOperator() {
+        @Override
+        public long applyAsLong(long left, long right) {
+            return Math.max(left, right);
+        }
+    }, 0);
+
+    void record(long micros, boolean failed) {
+        if (micros < 0)
+            micros = 0;
+        counts.incrementAndGet(bucket(micros));
+        calls.increment();
+        totalMicros.add(micros);
+        maxMicros.accumulate(micros);
+        if (failed)
+            exceptions.increment();
+    }
+
+    MethodStatistics snapshot(String method) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        long max = maxMicros.get();
+        return new MethodStatistics(method, new Date(start), calls.sum(), exceptions.sum(),
+                total == 0 ? 0 : (double) totalMicros.sum() / total,
+                percentile(snapshot, total, 0.5, max), percentile(snapshot, total, 0.9, max),
+                percentile(snapshot, total, 0.99, max), percentile(snapshot, total, 0.999, max), max);
+    }
+
+    private static long percentile(long[] counts, long total, double fraction, long max) {
+        if (total == 0)
+            return 0;
+        long rank = (long) Math.ceil(total * fraction);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank)
+                return Math.min(highestIn(i), max);
+        }
+        return max;
+    }
+
+    private static int bucket(long micros) {
+        if (micros < 2 * SUB_BUCKETS)
+            return (int) micros;
+        int shift = 63 - Long.numberOfLeadingZeros(micros) - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (micros >>> shift);
+    }
+
+    private static long highestIn(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS)
+            return bucket;
+        int shift = bucket / SUB_BUCKETS - 1;
+        long lowest = (long) (bucket - shift * SUB_BUCKETS) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -1,44 +1,74 @@
 package session;
 
-import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.rmi.RemoteException;
-import java.util.Arrays;
+import java.util.ArrayList;
 import java.util.HashSet;
-import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.StringTokenizer;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveAction;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 import javax.annotation.Resource;
 import javax.annotation.security.DeclareRoles;
 import javax.annotation.security.RolesAllowed;
+import javax.ejb.EJB;
 import javax.ejb.EJBContext;
 import javax.ejb.Stateless;
 import javax.ejb.TransactionAttribute;
 import javax.ejb.TransactionAttributeType;
 import javax.ejb.TransactionManagement;
 import javax.ejb.TransactionManagementType;
+import javax.interceptor.Interceptors;
 import javax.persistence.EntityManager;
 import javax.persistence.PersistenceContext;
-import rental.Car;
 import rental.CarRentalCompany;
 import rental.CarType;
+import rental.FleetImport;
+import rental.Reservation;
 
 @Stateless
 @DeclareRoles({"Manager"})
 @RolesAllowed("Manager")
 @TransactionManagement(TransactionManagementType.CONTAINER)
 @TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+@Interceptors(CallStatisticsInterceptor.class)
 public class ManagerSession implements ManagerSessionRemote {
     
+    private static final Logger logger = Logger.getLogger(ManagerSession.class.getName());
+    private static final int DEFAULT_CHUNK_SIZE = 1000;
+    private static final int EXPORT_PAGE_SIZE = 1000;
+    
     @Resource
     private EJBContext context;
     
     @PersistenceContext
     private EntityManager em;
+    
+    @EJB
+    private CompanyRouter router;
+    
+    @EJB
+    private ReservationLedger ledger;
+    
+    @EJB
+    private CatalogueCache catalogueCache;
+    
+    @EJB
+    private FleetImporter importer;
+    
+    @EJB
+    private ReservationTransfer transfer;
   
     @Override
     public Set<String> getAllRentalCompanies() throws RemoteException {
@@ -62,22 +92,21 @@ public class ManagerSession implements ManagerSessionRemote {
 
     @Override
     public int getNumberOfReservations(String company, String type, int id) throws RemoteException {
-        return em.createNamedQuery("getNumberOfReservationsForCarAndIDInCompany")
+        return ((Long) em.createNamedQuery("countReservationsForCarAndIDInCompany")
                 .setParameter("companyName", company)
                 .setParameter("name", type)
                 .setParameter("id", id)
-                .getResultList()
-                .size();   
+                .getSingleResult())
+                .intValue();
     }
 
     @Override
     public int getNumberOfReservations(String company, String type) throws RemoteException {
-        return em.createNamedQuery("getNumberOfReservationsForCarInCompany")
+        return ((Long) em.createNamedQuery("countReservationsForCarInCompany")
                 .setParameter("companyName", company)
                 .setParameter("name", type)
-                .getResultList()
-                .size();
-        
+                .getSingleResult())
+                .intValue();
     }
 
     @Override
@@ -93,93 +122,291 @@ public class ManagerSession implements ManagerSessionRemote {
         }
     }
 
+    @Override
+    public List<CompanyImportResult> addCompanies(List<String> companyCsvs) throws RemoteException {
+        int n = companyCsvs.size();
+        CompanyFleet[] fleets = new CompanyFleet[n];
+        String[] errors = new String[n];
+        // parsing is plain computation on the file contents, nothing here touches the container
+        ForkJoinPool.commonPool().invoke(new ParseCompanies(companyCsvs, fleets, errors, 0, n));
+        
+        // validate the whole batch before storing anything
+        Set<String> names = new HashSet<>(em.createNamedQuery("getAllRentalCompanyNames", String.class).getResultList());
+        List<Future<Integer>> added = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            if (fleets[i] != null && !names.add(fleets[i].getName()))
+                errors[i] = "Company " + fleets[i].getName() + " already exists";
+            added.add(errors[i] == null && fleets[i] != null ? importer.add(fleets[i]) : null);
+        }
+        
+        List<CompanyImportResult> results = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            String company = fleets[i] == null ? null : fleets[i].getName();
+            int cars = 0;
+            if (added.get(i) != null) {
+                try {
+                    cars = added.get(i).get();
+                    logger.log(Level.INFO, "Loaded {0} from file {1}", new Object[]{company, companyCsvs.get(i)});
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    errors[i] = "Interrupted";
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    while (cause.getCause() != null) {
+                        cause = cause.getCause();
+                    }
+                    errors[i] = describe(cause);
+                }
+            }
+            results.add(new CompanyImportResult(companyCsvs.get(i), company, cars, errors[i]));
+        }
+        return results;
+    }
+
     @Override
     @TransactionAttribute(TransactionAttributeType.REQUIRED)
     public void removeCompany(String companyName) throws RemoteException {
         CarRentalCompany crc = em.find(CarRentalCompany.class, companyName);
         if(crc == null) throw new RemoteException("Company not found in db");
+        ledger.companyRemoved(companyName);
         em.remove(crc); 
+        // a removed company can be imported again from scratch
+        FleetImport progress = em.find(FleetImport.class, companyName);
+        if(progress != null) em.remove(progress);
+        router.companyRemoved(companyName);
+        catalogueCache.evict(companyName);
     }
     
     @Override
     public int getNumberOfReservationsOfRenter(String renter) throws RemoteException {
-        return em.createNamedQuery("getReservationsByRenter")
+        return ((Long) em.createNamedQuery("countReservationsByRenter")
                 .setParameter("renter", renter)
-                .getResultList()
-                .size();
+                .getSingleResult())
+                .intValue();
     }
 
     @Override
     public Set<String> getBestClients() throws RemoteException {
-        Long best = (Long)em.createNamedQuery("getBestClientResCount").getResultList().get(0);
+        Integer best = (Integer) em.createNamedQuery("getHighestRenterReservationCount").getSingleResult();
+        if(best == null || best == 0)
+            return new HashSet<>();
         return new HashSet<>(
-                em.createNamedQuery("getClientsWithReservations")
+                em.createNamedQuery("getRentersWithReservationCount")
                         .setParameter("resCount", best)
                         .getResultList());
     }
     
+    @Override
+    public List<String> getTopClients(int k) throws RemoteException {
+        if (k <= 0)
+            return new ArrayList<>();
+        return em.createNamedQuery("getTopRenters", String.class)
+                .setMaxResults(k)
+                .getResultList();
+    }
+    
     @Override
     public CarType getMostPopularCarTypeIn(String carRentalCompanyName, int year) throws RemoteException {
         
-        List<CarType> carTypes = (List<CarType>) em.createNamedQuery("getMostPopularCarTypeInCompanyInYear")
+        List<String> carTypes = (List<String>) em.createNamedQuery("getMostPopularCarTypeNameInCompanyInYear")
                 .setParameter("company", carRentalCompanyName)
                 .setParameter("year", year)
+                .setMaxResults(1)
                 .getResultList();
 
-        if(carTypes == null) throw new RemoteException("No cars were rented that year");
-        return carTypes.get(0);
+        if(carTypes.isEmpty()) throw new RemoteException("No cars were rented that year");
+        return (CarType) em.createNamedQuery("getCarTypeInCompany")
+                .setParameter("companyName", carRentalCompanyName)
+                .setParameter("type", carTypes.get(0))
+                .getSingleResult();
+    }
+    
+    @Override
+    public long exportReservations(String path, boolean binary) throws RemoteException {
+        long exported = 0;
+        try (ReservationFileWriter out = ReservationFileWriter.open(new FileOutputStream(path), binary)) {
+            // keyset paging: continue after the last id instead of skipping rows with an offset
+            int after = Integer.MIN_VALUE;
+            List<Reservation> page;
+            do {
+                page = em.createNamedQuery("getReservationsAfterId", Reservation.class)
+                        .setParameter("after", after)
+                        .setMaxResults(EXPORT_PAGE_SIZE)
+                        .getResultList();
+                for (Reservation res : page) {
+                    out.write(res);
+                    after = res.getReservationId();
+                }
+                exported += page.size();
+            } while (page.size() == EXPORT_PAGE_SIZE);
+            // only a complete export gets a trailer, an interrupted one is rejected on import
+            out.finish();
+        } catch (IOException e) {
+            throw new RemoteException("Failed to export reservations: " + e.getMessage());
+        }
+        logger.log(Level.INFO, "Exported {0} reservations to {1}", new Object[]{exported, path});
+        return exported;
+    }
+    
+    @Override
+    public long importReservations(String path, boolean binary, int batchSize) throws RemoteException {
+        if (batchSize <= 0)
+            batchSize = DEFAULT_CHUNK_SIZE;
+        long imported = 0;
+        try (ReservationFileReader in = ReservationFileReader.open(new FileInputStream(path), binary)) {
+            List<Reservation> batch = new ArrayList<>(batchSize);
+            for (Reservation res = in.next(); res != null; res = in.next()) {
+                batch.add(res);
+                if (batch.size() == batchSize) {
+                    transfer.importBatch(batch);
+                    imported += batch.size();
+                    batch.clear();
+                }
+            }
+            if (!batch.isEmpty()) {
+                transfer.importBatch(batch);
+                imported += batch.size();
+            }
+        } catch (Exception e) {
+            RemoteException failure = new RemoteException("Failed to import reservations after "
+                    + imported + " reservations: " + e.getMessage());
+            if (imported > 0) {
+                // the stored batches stay, so cached companies must not go on without them;
+                // the statistics are left to rebuildStatistics
+                try {
+                    catalogueCache.evictAll();
+                } catch (RuntimeException evictFailure) {
+                    failure.addSuppressed(evictFailure);
+                }
+            }
+            throw failure;
+        }
+        if (imported > 0)
+            transfer.finishImport();
+        logger.log(Level.INFO, "Imported {0} reservations from {1}", new Object[]{imported, path});
+        return imported;
+    }
+    
+    @Override
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public void rebuildStatistics() throws RemoteException {
+        ledger.rebuild();
+    }
+    
+    @Override
+    public Map<String, Long> getCacheStatistics() throws RemoteException {
+        return catalogueCache.getStatistics();
+    }
+    
+    @Override
+    public List<MethodStatistics> getMethodStatistics(boolean reset) throws RemoteException {
+        return CallStatistics.snapshot(reset);
+    }
+    
+    @Override
+    public long importCompany(String csvPath, int chunkSize) throws RemoteException {
+        if (chunkSize <= 0)
+            chunkSize = DEFAULT_CHUNK_SIZE;
+        String company = null;
+        long position = 0;
+        try (CompanyCsvReader in = new CompanyCsvReader(openCsv(csvPath))) {
+            long resumeAfter = -1;
+            while (in.nextType()) {
+                if (resumeAfter < 0) {
+                    company = in.getName();
+                    resumeAfter = importer.start(company, in.getRegions(), csvPath);
+                    if (resumeAfter > 0)
+                        logger.log(Level.INFO, "Resuming import of {0} after {1} cars", new Object[]{company, resumeAfter});
+                }
+                // skip the cars of this type that were committed by an earlier attempt
+                long skip = Math.max(0, Math.min(in.getCount(), resumeAfter - position));
+                position += skip;
+                for (long left = in.getCount() - skip; left > 0; ) {
+                    int chunk = (int) Math.min(chunkSize, left);
+                    position += chunk;
+                    left -= chunk;
+                    importer.importChunk(company, in.getType(), chunk, position);
+                    logger.log(Level.INFO, "Imported {0} cars of {1}", new Object[]{position, company});
+                }
+            }
+            if (company == null)
+                throw new IOException("No car types in " + csvPath);
+            importer.finish(company);
+        } catch (Exception e) {
+            throw new RemoteException("Failed to import company " + (company == null ? csvPath : company)
+                    + " (import it again to resume): " + e.getMessage());
+        }
+        logger.log(Level.INFO, "Loaded {0} from file {1}", new Object[]{company, csvPath});
+        return position;
+    }
+    
+    @Override
+    public long getImportProgress(String companyName) throws RemoteException {
+        return importer.getProgress(companyName);
     }
     
     private void loadRental(String datafile) throws Exception {
-        CrcData data = loadData(datafile);
-        CarRentalCompany company = new CarRentalCompany(data.name, data.regions, data.cars);
+        CompanyFleet fleet = CompanyFleet.read(openCsv(datafile));
+        CarRentalCompany company = new CarRentalCompany(fleet.getName(), fleet.getRegions(), fleet.createCars());
         em.persist(company);
-        Logger.getLogger(ManagerSession.class.getName()).log(Level.INFO, "Loaded {0} from file {1}", new Object[]{data.name, datafile});
+        router.companyAdded(company);
+        catalogueCache.evict(fleet.getName());
+        logger.log(Level.INFO, "Loaded {0} from file {1}", new Object[]{fleet.getName(), datafile});
     }
     
-    private static CrcData loadData(String datafile)
-            throws NumberFormatException, IOException {
-
-        CrcData out = new CrcData();
-        StringTokenizer csvReader;
+    /**
+     * Open a company file from the file system, or from the jar when there
+     * is no such file.
+     */
+    private static InputStreamReader openCsv(String path) throws IOException {
+        InputStream in = new File(path).isFile()
+                ? new FileInputStream(path)
+                : ManagerSession.class.getClassLoader().getResourceAsStream(path);
+        if (in == null)
+            throw new IOException("No such file: " + path);
+        return new InputStreamReader(in, StandardCharsets.UTF_8);
+    }
+    
+    // some exceptions, e.g. a NullPointerException, carry no message
+    private static String describe(Throwable t) {
+        return t.getMessage() != null ? t.getMessage() : t.toString();
+    }
+    
+    /**
+     * Parses company files on a fork-join pool, splitting the files in
+     * halves until every task has a single file.
+     */
+    private static class ParseCompanies extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
         
-        //open file from jar
-        BufferedReader in = new BufferedReader(new InputStreamReader(ManagerSession.class.getClassLoader().getResourceAsStream(datafile)));
+        private final List<String> files;
+        private final CompanyFleet[] fleets;
+        private final String[] errors;
+        private final int from;
+        private final int to;
+        
+        ParseCompanies(List<String> files, CompanyFleet[] fleets, String[] errors, int from, int to) {
+            this.files = files;
+            this.fleets = fleets;
+            this.errors = errors;
+            this.from = from;
+            this.to = to;
+        }
         
-        try {
-            while (in.ready()) {
-                String line = in.readLine();
-                
-                if (line.startsWith("#")) {
-                    // comment -> skip					
-                } else if (line.startsWith("-")) {
-                    csvReader = new StringTokenizer(line.substring(1), ",");
-                    out.name = csvReader.nextToken();
-                    out.regions = Arrays.asList(csvReader.nextToken().split(":"));
-                } else {
-                    csvReader = new StringTokenizer(line, ",");
-                    //create new car type from first 5 fields
-                    CarType type = new CarType(csvReader.nextToken(),
-                            Integer.parseInt(csvReader.nextToken()),
-                            Float.parseFloat(csvReader.nextToken()),
-                            Double.parseDouble(csvReader.nextToken()),
-                            Boolean.parseBoolean(csvReader.nextToken()));
-                    //create N new cars with given type, where N is the 5th field
-                    for (int i = Integer.parseInt(csvReader.nextToken()); i > 0; i--) {
-                        out.cars.add(new Car(type));
-                    }        
+        @Override
+        protected void compute() {
+            if (to - from > 1) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new ParseCompanies(files, fleets, errors, from, middle),
+                        new ParseCompanies(files, fleets, errors, middle, to));
+            } else if (to > from) {
+                try {
+                    fleets[from] = CompanyFleet.read(openCsv(files.get(from)));
+                } catch (IOException | RuntimeException e) {
+                    errors[from] = describe(e);
                 }
-            } 
-        } finally {
-            in.close();
+            }
         }
-
-        return out;
-    }
-    
-    static class CrcData {
-            public List<Car> cars = new LinkedList<Car>();
-            public String name;
-            public List<String> regions =  new LinkedList<String>();
     }
-}
\ No newline at end of file
+}
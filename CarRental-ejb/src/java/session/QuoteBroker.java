@@ -0,0 +1,284 @@
+package session;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.annotation.Resource;
+import javax.ejb.EJB;
+import javax.ejb.SessionContext;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.OptimisticLockException;
+import javax.persistence.PersistenceContext;
+import javax.persistence.PersistenceException;
+import javax.transaction.TransactionSynchronizationRegistry;
+import rental.Car;
+import rental.CarRentalCompany;
+import rental.CarType;
+import rental.EpochDay;
+import rental.FreeGaps;
+import rental.Quote;
+import rental.RedeemedQuote;
+import rental.Reservation;
+import rental.ReservationConstraints;
+import rental.ReservationEvents;
+import rental.ReservationException;
+
+/**
+ * The reservation logic shared by the stateful session, which keeps the
+ * quotes of a client, and the stateless session, whose clients keep their
+ * quotes as tokens.
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+public class QuoteBroker {
+
+    private static final Logger logger = Logger.getLogger(QuoteBroker.class.getName());
+    // companies that have not answered within this budget are left out of a quote
+    private static final long QUOTE_BUDGET_MILLIS = 2000;
+
+    @Resource
+    private SessionContext context;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactions;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @EJB
+    private CompanyRouter router;
+
+    @EJB
+    private CompanyQuoter quoter;
+
+    @EJB
+    private ReservationLedger ledger;
+
+    @EJB
+    private AvailabilityCache availabilityCache;
+
+    @EJB
+    private QuoteHolds holds;
+
+    @EJB
+    private FreeCapacity capacity;
+
+    /**
+     * Get the car types of every company that have a car free during the
+     * whole period.
+     */
+    public List<CarType> getAvailableCarTypes(Date start, Date end) {
+        List<CarType> available = availabilityCache.get(start, end);
+        if (available != null)
+            return available;
+        long generation = availabilityCache.getGeneration();
+        // the cache holds whole days, so the result must not depend on the time of day
+        int firstDay = EpochDay.of(start);
+        int lastDay = EpochDay.of(end);
+        Date firstDate = EpochDay.toDate(firstDay);
+        Date lastDate = EpochDay.toDate(lastDay);
+        available = new ArrayList<>();
+        for (Object[] row : em.createNamedQuery("getCarTypesOfAllCompanies", Object[].class).getResultList()) {
+            String company = (String) row[0];
+            CarType type = (CarType) row[1];
+            // only the types the capacity cannot rule out are checked car by car, in the database
+            if (capacity.getFreeCars(company, type.getName(), firstDay, lastDay) > 0
+                    && quoter.countFreeCars(company, type.getName(), firstDate, lastDate) > 0)
+                available.add(type);
+        }
+        return availabilityCache.put(start, end, available, generation);
+    }
+
+    /**
+     * Get the cheapest quote of all companies that offer the car type in
+     * the region, with a car held for it.
+     */
+    public Quote createQuote(String renter, Date start, Date end, String carType, String region) throws RemoteException, ReservationException {
+        ReservationConstraints constraints = new ReservationConstraints(start, end, carType, region);
+        // periods are whole days, two moments on the same day are no period
+        if(constraints.getStartDay() >= constraints.getEndDay())
+            throw new ReservationException("Illegal given period");
+        Quote best = null;
+        List<Future<Quote>> offers = new ArrayList<>();
+        List<Future<Quote>> late = new ArrayList<>();
+        try {
+            // ask all eligible companies at once and keep the cheapest offer that arrives in time
+            for(String company : router.getCandidates(region, carType))
+                offers.add(quoter.quote(company, constraints, renter));
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(QUOTE_BUDGET_MILLIS);
+            for(Future<Quote> offer : offers) {
+                Quote q;
+                try {
+                    q = offer.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                } catch(TimeoutException e) {
+                    // a quote that is already being made still holds a car when it arrives
+                    offer.cancel(true);
+                    late.add(offer);
+                    continue;
+                } catch(ExecutionException e) {
+                    logger.log(Level.WARNING, "Quote failed: {0}", e.getCause().getMessage());
+                    continue;
+                }
+                if(q == null)
+                    continue;
+                if(best == null || q.getRentalPrice() < best.getRentalPrice()) {
+                    if(best != null)
+                        holds.release(best.getHoldId());
+                    best = q;
+                } else {
+                    holds.release(q.getHoldId());
+                }
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            // no quote is handed out, so every hold has to go, including that of the best one
+            late = offers;
+            throw new RemoteException(e.getMessage());
+        } catch(Exception e) {
+            late = offers;
+            throw new RemoteException(e.getMessage());
+        } finally {
+            if(!late.isEmpty())
+                quoter.releaseLateQuotes(late);
+        }
+        if(best == null)
+            throw new ReservationException("No quotes possible with given constraints");
+        ReservationEvents.quoted(best);
+        return best;
+    }
+
+    /**
+     * Turn all given quotes into reservations in a transaction of their own,
+     * or none of them. When a car turns out to be booked concurrently, the
+     * quotes are confirmed once more, on whatever cars are free by then.
+     * @param redeem whether the quotes come from tokens, which can only be
+     * confirmed once
+     */
+    public List<Reservation> confirmQuotes(List<Quote> quotes, boolean redeem) throws ReservationException {
+        QuoteBroker self = context.getBusinessObject(QuoteBroker.class);
+        try {
+            return self.book(quotes, redeem);
+        } catch (ConcurrentBookingException e) {
+            try {
+                return self.book(quotes, redeem);
+            } catch (ConcurrentBookingException again) {
+                throw new ReservationException(again.getMessage());
+            }
+        }
+    }
+
+    /**
+     * One attempt of {@link #confirmQuotes}, the transaction is marked for
+     * rollback when a quote fails.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRED)
+    public List<Reservation> book(List<Quote> quotes, boolean redeem) throws ReservationException {
+        if (redeem)
+            redeem(quotes);
+        List<Reservation> done = new LinkedList<>();
+        // every company is looked up once, and all reservations go out
+        // together in one batched flush
+        Map<String, CarRentalCompany> companies = new HashMap<>();
+        // the holds are not needed anymore once the reservations are stored or given up
+        List<Long> holdIds = new ArrayList<>(quotes.size());
+        for (Quote quote : quotes) {
+            holdIds.add(quote.getHoldId());
+        }
+        holds.releaseAfterCompletion(holdIds);
+        try {
+            for (Quote quote : quotes) {
+                CarRentalCompany crc = companies.get(quote.getRentalCompany());
+                if(crc == null) {
+                    crc = em.find(CarRentalCompany.class, quote.getRentalCompany());
+                    if(crc == null) throw new ReservationException("Company doesn't exist anymore");
+                    companies.put(crc.getName(), crc);
+                }
+                // a held car is looked up by id instead of searching the fleet
+                Integer heldCar = holds.getHeldCar(quote.getHoldId(), quote.getRentalCompany());
+                Reservation res = heldCar == null
+                        ? crc.confirmQuote(quote)
+                        : crc.confirmQuote(quote, em.find(Car.class, heldCar));
+                // crc is managed, so only the chosen car and the new reservation get written;
+                // bumping the car's version makes a concurrent booking of the same car fail
+                em.lock(em.find(Car.class, res.getCarId()), LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+                done.add(res);
+            }
+            availabilityCache.reservationsChanged(done);
+            capacity.reservationsChanged(done);
+            // write the bookings first, so a lost race surfaces here and not in the ledger
+            em.flush();
+            ledger.reservationsConfirmed(done);
+            recordAfterCommit(done);
+        } catch (ReservationException e) {
+            context.setRollbackOnly();
+            throw e;
+        } catch (OptimisticLockException e) {
+            context.setRollbackOnly();
+            throw new ConcurrentBookingException("Reservation failed, a car was booked concurrently");
+        }
+        return done;
+    }
+
+    // the shared calendars and the audit trail only see bookings that happened
+    private void recordAfterCommit(final List<Reservation> reservations) {
+        Transactions.afterCommit(transactions, new Runnable() {
+            @Override
+            public void run() {
+                for (Reservation res : reservations) {
+                    FreeGaps.reserved(res);
+                    ReservationEvents.reserved(res);
+                }
+            }
+        });
+    }
+
+    private void redeem(List<Quote> quotes) throws ReservationException {
+        try {
+            // claim the tokens first, a replayed token fails here before any car is booked
+            long expires = System.currentTimeMillis() + QuoteHolds.HOLD_TTL_MILLIS;
+            for (Quote quote : quotes) {
+                em.persist(new RedeemedQuote(quote.getHoldId(), expires));
+            }
+            em.flush();
+        } catch (PersistenceException e) {
+            context.setRollbackOnly();
+            throw new ReservationException("Reservation failed, a quote was confirmed already");
+        }
+    }
+
+    /**
+     * A booking that lost a race for a car, and may succeed when tried again.
+     */
+    static class ConcurrentBookingException extends ReservationException {
+
+        private static final long serialVersionUID = 1L;
+
+        ConcurrentBookingException(String message) {
+            super(message);
+        }
+    }
+
+    public String getCheapestCarType(Date start, Date end, String region) throws RemoteException {
+        // walk the offers in price order and stop at the first one with a free car
+        for(CompanyRouter.Offer offer : router.getOffersByPrice(region)) {
+            if(capacity.getFreeCars(offer.getCompany(), offer.getCarType(), EpochDay.of(start), EpochDay.of(end)) > 0
+                    && quoter.countFreeCars(offer.getCompany(), offer.getCarType(), start, end) > 0)
+                return offer.getCarType();
+        }
+        throw new RemoteException("No cheapest car type available");
+    }
+}
@@ -0,0 +1,165 @@
+package session;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import javax.annotation.Resource;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Time-limited holds that set a specific car aside for a quote, so quotes
+ * handed out at the same time never promise the same car for overlapping
+ * periods, and confirming a quote takes the held car instead of searching
+ * the fleet again. Holds live in memory and expire after HOLD_TTL_MILLIS;
+ * the reservations in the database stay the source of truth.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class QuoteHolds {
+
+    static final long HOLD_TTL_MILLIS = 10 * 60 * 1000;
+
+    @Resource
+    private TransactionSynchronizationRegistry transactions;
+
+    private final Map<Long, Hold> holds = new HashMap<>();
+    // company name -> car id -> holds on that car
+    private final Map<String, Map<Integer, List<Hold>>> holdsByCar = new HashMap<>();
+    // random rather than sequential ids, so a hold id made on another server
+    // (carried in a quote token) is very unlikely to match a hold here
+    private final Random ids = new SecureRandom();
+    private final Random random = new Random();
+
+    /**
+     * Hold one of the given free cars that is not held for an overlapping
+     * period yet. The search starts at a random car, so quotes made at the
+     * same time spread over the fleet instead of all confirming the same car.
+     * @return the id of the hold, or 0 if every car is held already
+     */
+    public synchronized long hold(String company, List<Integer> freeCarIds, int firstDay, int lastDay) {
+        if (freeCarIds.isEmpty())
+            return 0;
+        long now = System.currentTimeMillis();
+        Map<Integer, List<Hold>> companyHolds = holdsByCar.get(company);
+        if (companyHolds == null) {
+            companyHolds = new HashMap<>();
+            holdsByCar.put(company, companyHolds);
+        }
+        int size = freeCarIds.size();
+        int first = random.nextInt(size);
+        for (int i = 0; i < size; i++) {
+            Integer carId = freeCarIds.get((first + i) % size);
+            List<Hold> carHolds = companyHolds.get(carId);
+            if (carHolds == null) {
+                carHolds = new ArrayList<>(1);
+                companyHolds.put(carId, carHolds);
+            }
+            if (!isHeld(carHolds, firstDay, lastDay, now)) {
+                Hold hold = new Hold(newId(), company, carId, firstDay, lastDay, now + HOLD_TTL_MILLIS);
+                carHolds.add(hold);
+                holds.put(hold.id, hold);
+                return hold.id;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * @return the id of the car of the given company held by the given hold,
+     * or null if the hold expired or does not exist
+     */
+    public synchronized Integer getHeldCar(long holdId, String company) {
+        Hold hold = holds.get(holdId);
+        if (hold == null || hold.expires < System.currentTimeMillis() || !hold.company.equals(company))
+            return null;
+        return hold.carId;
+    }
+
+    public synchronized void release(long holdId) {
+        Hold hold = holds.remove(holdId);
+        if (hold != null)
+            unindex(hold);
+    }
+
+    /**
+     * Release the given holds once the current transaction completes, when
+     * the reservations made with them are in the database or given up.
+     */
+    public void releaseAfterCompletion(final Collection<Long> holdIds) {
+        Transactions.afterCompletion(transactions, new Runnable() {
+            @Override
+            public void run() {
+                for (long holdId : holdIds) {
+                    release(holdId);
+                }
+            }
+        });
+    }
+
+    @Schedule(hour = "*", minute = "*", second = "*/30", persistent = false)
+    public synchronized void expireHolds() {
+        long now = System.currentTimeMillis();
+        for (Iterator<Hold> it = holds.values().iterator(); it.hasNext(); ) {
+            Hold hold = it.next();
+            if (hold.expires < now) {
+                it.remove();
+                unindex(hold);
+            }
+        }
+    }
+
+    private long newId() {
+        long id;
+        do {
+            id = ids.nextLong();
+        } while (id == 0 || holds.containsKey(id));
+        return id;
+    }
+
+    private static boolean isHeld(List<Hold> carHolds, int firstDay, int lastDay, long now) {
+        for (Hold hold : carHolds) {
+            // bounds inclusive, like the availability checks
+            if (hold.expires >= now && hold.firstDay <= lastDay && firstDay <= hold.lastDay)
+                return true;
+        }
+        return false;
+    }
+
+    private void unindex(Hold hold) {
+        Map<Integer, List<Hold>> companyHolds = holdsByCar.get(hold.company);
+        List<Hold> carHolds = companyHolds.get(hold.carId);
+        carHolds.remove(hold);
+        if (carHolds.isEmpty())
+            companyHolds.remove(hold.carId);
+        if (companyHolds.isEmpty())
+            holdsByCar.remove(hold.company);
+    }
+
+    private static class Hold {
+
+        private final long id;
+        private final String company;
+        private final int carId;
+        private final int firstDay;
+        private final int lastDay;
+        private final long expires;
+
+        Hold(long id, String company, int carId, int firstDay, int lastDay, long expires) {
+            this.id = id;
+            this.company = company;
+            this.carId = carId;
+            this.firstDay = firstDay;
+            this.lastDay = lastDay;
+            this.expires = expires;
+        }
+    }
+}
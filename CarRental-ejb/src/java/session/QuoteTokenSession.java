@@ -0,0 +1,56 @@
+package session;
+
+import java.rmi.RemoteException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.interceptor.Interceptors;
+import rental.CarType;
+import rental.Quote;
+import rental.Reservation;
+import rental.ReservationException;
+
+@Stateless
+@TransactionAttribute(TransactionAttributeType.NOT_SUPPORTED)
+@Interceptors(CallStatisticsInterceptor.class)
+public class QuoteTokenSession implements QuoteTokenSessionRemote {
+
+    @EJB
+    private QuoteBroker broker;
+    
+    @EJB
+    private QuoteTokens tokens;
+
+    @Override
+    public List<CarType> getAvailableCarTypes(Date start, Date end) {
+        return broker.getAvailableCarTypes(start, end);
+    }
+
+    @Override
+    public String createQuote(String renter, Date start, Date end, String carType, String region) throws RemoteException, ReservationException {
+        return tokens.encode(broker.createQuote(renter, start, end, carType, region));
+    }
+
+    @Override
+    public Quote getQuote(String token) throws ReservationException {
+        return tokens.decode(token);
+    }
+
+    @Override
+    public List<Reservation> confirmQuotes(List<String> quoteTokens) throws ReservationException {
+        List<Quote> quotes = new ArrayList<>(quoteTokens.size());
+        for (String token : quoteTokens) {
+            quotes.add(tokens.decode(token));
+        }
+        return broker.confirmQuotes(quotes, true);
+    }
+
+    @Override
+    public String getCheapestCarType(Date start, Date end, String region) throws RemoteException {
+        return broker.getCheapestCarType(start, end, region);
+    }
+}
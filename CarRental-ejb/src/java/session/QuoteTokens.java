@@ -0,0 +1,140 @@
+package session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.logging.Logger;
+import javax.annotation.PostConstruct;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import javax.ejb.ConcurrencyManagement;
+import javax.ejb.ConcurrencyManagementType;
+import javax.ejb.Schedule;
+import javax.ejb.Singleton;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import rental.Quote;
+import rental.ReservationException;
+
+/**
+ * Encodes quotes as signed tokens that clients keep instead of the server.
+ *
+ * A token is the quote in binary, followed by an HMAC-SHA256 of it, both in
+ * URL-safe Base64 and separated by a dot. Every server that shares the key
+ * (system property rental.quote-token-key, Base64) accepts the tokens of the
+ * others. Without the property a random key is used, so tokens only work on
+ * the server that issued them and until it restarts.
+ */
+@Singleton
+@ConcurrencyManagement(ConcurrencyManagementType.BEAN)
+public class QuoteTokens {
+
+    private static final Logger logger = Logger.getLogger(QuoteTokens.class.getName());
+    private static final String ALGORITHM = "HmacSHA256";
+    private static final byte VERSION = 2;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    private SecretKeySpec key;
+
+    @PostConstruct
+    public void init() {
+        String configured = System.getProperty("rental.quote-token-key");
+        byte[] secret;
+        if (configured != null) {
+            secret = Base64.getDecoder().decode(configured);
+        } else {
+            logger.warning("No rental.quote-token-key set, quote tokens are only valid on this server");
+            secret = new byte[32];
+            new SecureRandom().nextBytes(secret);
+        }
+        key = new SecretKeySpec(secret, ALGORITHM);
+    }
+
+    /**
+     * Get a token for the given quote that is valid as long as its hold.
+     */
+    public String encode(Quote quote) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeLong(quote.getHoldId());
+            out.writeLong(System.currentTimeMillis() + QuoteHolds.HOLD_TTL_MILLIS);
+            out.writeInt(quote.getStartDay());
+            out.writeInt(quote.getEndDay());
+            out.writeDouble(quote.getRentalPrice());
+            out.writeUTF(quote.getCarRenter());
+            out.writeUTF(quote.getRentalCompany());
+            out.writeUTF(quote.getCarType());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] payload = bytes.toByteArray();
+        Base64.Encoder base64 = Base64.getUrlEncoder().withoutPadding();
+        return base64.encodeToString(payload) + "." + base64.encodeToString(sign(payload));
+    }
+
+    /**
+     * Get the quote of a token issued by {@link #encode}.
+     * @throws ReservationException if the token was altered or has expired
+     */
+    public Quote decode(String token) throws ReservationException {
+        int dot = token == null ? -1 : token.indexOf('.');
+        if (dot < 0)
+            throw new ReservationException("Invalid quote token");
+        byte[] payload;
+        byte[] signature;
+        try {
+            payload = Base64.getUrlDecoder().decode(token.substring(0, dot));
+            signature = Base64.getUrlDecoder().decode(token.substring(dot + 1));
+        } catch (IllegalArgumentException e) {
+            throw new ReservationException("Invalid quote token");
+        }
+        // constant time, so the signature cannot be guessed byte by byte
+        if (!MessageDigest.isEqual(signature, sign(payload)))
+            throw new ReservationException("Invalid quote token");
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload))) {
+            if (in.readByte() != VERSION)
+                throw new ReservationException("Unsupported quote token");
+            long holdId = in.readLong();
+            if (in.readLong() < System.currentTimeMillis())
+                throw new ReservationException("Quote has expired");
+            int startDay = in.readInt();
+            int endDay = in.readInt();
+            double price = in.readDouble();
+            Quote quote = new Quote(in.readUTF(), startDay, endDay, in.readUTF(), in.readUTF(), price);
+            quote.setHoldId(holdId);
+            return quote;
+        } catch (IOException e) {
+            throw new ReservationException("Invalid quote token");
+        }
+    }
+
+    /**
+     * Forget confirmed tokens that have expired, they cannot be replayed anymore.
+     */
+    @Schedule(hour = "*", minute = "*/10", persistent = false)
+    public void purgeRedeemedQuotes() {
+        em.createNamedQuery("deleteExpiredRedeemedQuotes")
+                .setParameter("now", System.currentTimeMillis())
+                .executeUpdate();
+    }
+
+    private byte[] sign(byte[] payload) {
+        try {
+            // Mac instances are not thread safe, and cheap compared to a remote call
+            Mac mac = Mac.getInstance(ALGORITHM);
+            mac.init(key);
+            return mac.doFinal(payload);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
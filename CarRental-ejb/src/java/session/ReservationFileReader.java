@@ -0,0 +1,168 @@
+package session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.List;
+import rental.Quote;
+import rental.Reservation;
+
+/**
+ * Streams reservations from a reservation file, one at a time.
+ *
+ * <pre>
+ * # comment
+ * company,car type,car id,start (yyyy-mm-dd),end (yyyy-mm-dd),price,renter
+ * # end of file,number of reservations
+ * </pre>
+ *
+ * The binary format holds the same fields: dates as day numbers, and every
+ * company and car type name only the first time it occurs. It also ends
+ * with the number of reservations, so a file cut off while it was written
+ * is never taken for a complete one.
+ */
+abstract class ReservationFileReader implements Closeable {
+
+    static ReservationFileReader open(InputStream in, boolean binary) throws IOException {
+        return binary ? new Binary(in) : new Csv(in);
+    }
+
+    protected long read;
+
+    /**
+     * @return the next reservation, or null at the end of the file
+     * @throws IOException also when the file ends without a trailer, or the
+     * trailer does not match the number of reservations read
+     */
+    abstract Reservation next() throws IOException;
+
+    protected void checkTrailer(long expected) throws IOException {
+        if (expected != read)
+            throw new IOException("Reservation file holds " + read + " reservations instead of " + expected);
+    }
+
+    protected static IOException incomplete() {
+        return new IOException("Reservation file is incomplete, it has no trailer");
+    }
+
+    private static Reservation reservation(String company, String carType, int carId,
+            int startDay, int endDay, double price, String renter) {
+        Quote quote = new Quote(renter, startDay, endDay, company, carType, price);
+        return new Reservation(quote, carId);
+    }
+
+    private static class Csv extends ReservationFileReader {
+
+        // fields before the renter, which takes the rest of the line
+        private static final int FIELDS = 6;
+
+        private final BufferedReader in;
+        private final String[] fields = new String[FIELDS];
+        private int lineNumber;
+
+        Csv(InputStream in) {
+            this.in = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        }
+
+        @Override
+        Reservation next() throws IOException {
+            String line;
+            while ((line = in.readLine()) != null) {
+                lineNumber++;
+                if (line.startsWith(ReservationFileWriter.CSV_TRAILER)) {
+                    try {
+                        checkTrailer(Long.parseLong(line.substring(ReservationFileWriter.CSV_TRAILER.length())));
+                    } catch (NumberFormatException e) {
+                        throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+                    }
+                    return null;
+                }
+                if (line.isEmpty() || line.startsWith("#"))
+                    continue;
+                int start = 0;
+                for (int i = 0; i < FIELDS; i++) {
+                    int comma = line.indexOf(',', start);
+                    if (comma < 0)
+                        throw new IOException("Line " + lineNumber + ": expected " + (FIELDS + 1) + " fields");
+                    fields[i] = line.substring(start, comma);
+                    start = comma + 1;
+                }
+                read++;
+                try {
+                    return reservation(fields[0], fields[1], Integer.parseInt(fields[2]),
+                            (int) LocalDate.parse(fields[3]).toEpochDay(),
+                            (int) LocalDate.parse(fields[4]).toEpochDay(),
+                            Double.parseDouble(fields[5]), line.substring(start));
+                } catch (NumberFormatException | DateTimeParseException e) {
+                    throw new IOException("Line " + lineNumber + ": " + e.getMessage());
+                }
+            }
+            throw incomplete();
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private static class Binary extends ReservationFileReader {
+
+        private final DataInputStream in;
+        private final List<String> names = new ArrayList<>();
+
+        Binary(InputStream in) throws IOException {
+            this.in = new DataInputStream(new BufferedInputStream(in));
+            if (this.in.readInt() != ReservationFileWriter.BINARY_MAGIC)
+                throw new IOException("Not a reservation file");
+            int version = this.in.readInt();
+            if (version != ReservationFileWriter.BINARY_VERSION)
+                throw new IOException("Unsupported reservation file version " + version);
+        }
+
+        @Override
+        Reservation next() throws IOException {
+            byte marker;
+            try {
+                marker = in.readByte();
+            } catch (EOFException e) {
+                throw incomplete();
+            }
+            if (marker == 0) {
+                checkTrailer(in.readLong());
+                return null;
+            }
+            read++;
+            String company = readName();
+            String carType = readName();
+            int carId = in.readInt();
+            int startDay = in.readInt();
+            int endDay = in.readInt();
+            double price = in.readDouble();
+            return reservation(company, carType, carId, startDay, endDay, price, in.readUTF());
+        }
+
+        private String readName() throws IOException {
+            int number = in.readInt();
+            if (number == names.size())
+                names.add(in.readUTF());
+            else if (number < 0 || number > names.size())
+                throw new IOException("Corrupt reservation file");
+            return names.get(number);
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package session;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Map;
+import rental.Reservation;
+
+/**
+ * Writes reservations one at a time to a .csv or binary reservation file,
+ * see {@link ReservationFileReader} for both formats. A file is only
+ * complete once {@link #finish} wrote its trailer; closing a writer without
+ * it leaves a file the reader rejects.
+ */
+abstract class ReservationFileWriter implements Closeable {
+
+    static final String CSV_HEADER = "# company,car type,car id,start,end,price,renter";
+    // followed by the number of reservations in the file
+    static final String CSV_TRAILER = "# end of file,";
+    // "CRES" followed by the format version
+    static final int BINARY_MAGIC = 0x43524553;
+    static final int BINARY_VERSION = 2;
+
+    protected long written;
+
+    static ReservationFileWriter open(OutputStream out, boolean binary) throws IOException {
+        return binary ? new Binary(out) : new Csv(out);
+    }
+
+    abstract void write(Reservation reservation) throws IOException;
+
+    /**
+     * Mark the file as complete, after the last reservation was written.
+     */
+    abstract void finish() throws IOException;
+
+    // neither format can tell a missing renter from an empty name, so it is refused
+    private static String renter(Reservation reservation) throws IOException {
+        if (reservation.getCarRenter() == null)
+            throw new IOException("Reservation " + reservation.getReservationId() + " has no renter");
+        return reservation.getCarRenter();
+    }
+
+    private static class Csv extends ReservationFileWriter {
+
+        private final Writer out;
+
+        Csv(OutputStream out) throws IOException {
+            this.out = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+            this.out.write(CSV_HEADER);
+            this.out.write('\n');
+        }
+
+        @Override
+        void write(Reservation reservation) throws IOException {
+            String renter = renter(reservation);
+            out.write(reservation.getRentalCompany());
+            out.write(',');
+            out.write(reservation.getCarType());
+            out.write(',');
+            out.write(Integer.toString(reservation.getCarId()));
+            out.write(',');
+            out.write(LocalDate.ofEpochDay(reservation.getStartDay()).toString());
+            out.write(',');
+            out.write(LocalDate.ofEpochDay(reservation.getEndDay()).toString());
+            out.write(',');
+            out.write(Double.toString(reservation.getRentalPrice()));
+            out.write(',');
+            // last, so a renter name may contain commas
+            out.write(renter);
+            out.write('\n');
+            written++;
+        }
+
+        @Override
+        void finish() throws IOException {
+            out.write(CSV_TRAILER);
+            out.write(Long.toString(written));
+            out.write('\n');
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    private static class Binary extends ReservationFileWriter {
+
+        private final DataOutputStream out;
+        // companies and car types are written once and referred to by number afterwards
+        private final Map<String, Integer> names = new HashMap<>();
+
+        Binary(OutputStream out) throws IOException {
+            this.out = new DataOutputStream(new BufferedOutputStream(out));
+            this.out.writeInt(BINARY_MAGIC);
+            this.out.writeInt(BINARY_VERSION);
+        }
+
+        @Override
+        void write(Reservation reservation) throws IOException {
+            String renter = renter(reservation);
+            out.writeByte(1);
+            writeName(reservation.getRentalCompany());
+            writeName(reservation.getCarType());
+            out.writeInt(reservation.getCarId());
+            out.writeInt(reservation.getStartDay());
+            out.writeInt(reservation.getEndDay());
+            out.writeDouble(reservation.getRentalPrice());
+            out.writeUTF(renter);
+            written++;
+        }
+
+        @Override
+        void finish() throws IOException {
+            out.writeByte(0);
+            out.writeLong(written);
+        }
+
+        private void writeName(String name) throws IOException {
+            Integer number = names.get(name);
+            if (number != null) {
+                out.writeInt(number);
+            } else {
+                // the next free number announces a new name
+                out.writeInt(names.size());
+                out.writeUTF(name);
+                names.put(name, names.size());
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
@@ -0,0 +1,203 @@
+package session;
+
+import java.time.LocalDate;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import javax.annotation.Resource;
+import javax.ejb.EJBException;
+import javax.ejb.SessionContext;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.PersistenceContext;
+import rental.CarTypePopularity;
+import rental.CarTypePopularityKey;
+import rental.RenterReservationCount;
+import rental.Reservation;
+
+/**
+ * Keeps the reservation statistics in step with the reservations. Every
+ * method joins the transaction of its caller, so the statistics commit or
+ * roll back together with the reservations they describe.
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.MANDATORY)
+public class ReservationLedger {
+
+    private static final int REBUILD_PAGE_SIZE = 1000;
+
+    private static final Comparator<CarTypePopularityKey> KEY_ORDER = new Comparator<CarTypePopularityKey>() {
+        @Override
+        public int compare(CarTypePopularityKey left, CarTypePopularityKey right) {
+            int order = left.getRentalCompany().compareTo(right.getRentalCompany());
+            if (order == 0)
+                order = Integer.compare(left.getRentalYear(), right.getRentalYear());
+            if (order == 0)
+                order = left.getCarType().compareTo(right.getCarType());
+            return order;
+        }
+    };
+
+    @Resource
+    private SessionContext context;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    /**
+     * Count the given reservations. The counters are updated in a fixed
+     * order, so two transactions that touch the same counters cannot
+     * deadlock on them.
+     */
+    public void reservationsConfirmed(List<Reservation> reservations) {
+        Map<String, Integer> perRenter = new TreeMap<>();
+        Map<CarTypePopularityKey, Integer> perCarType = new TreeMap<>(KEY_ORDER);
+        for (Reservation res : reservations) {
+            count(perRenter, res.getCarRenter(), 1);
+            count(perCarType, new CarTypePopularityKey(res.getRentalCompany(),
+                    LocalDate.ofEpochDay(res.getStartDay()).getYear(), res.getCarType()), 1);
+        }
+        for (Map.Entry<String, Integer> entry : perRenter.entrySet()) {
+            addReservations(entry.getKey(), entry.getValue());
+        }
+        for (Map.Entry<CarTypePopularityKey, Integer> entry : perCarType.entrySet()) {
+            addReservations(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Take the reservations of a company that is about to be removed out of
+     * the statistics. Counters are only decreased where they exist, as
+     * reservations stored before the statistics were built may never have
+     * been counted, and counters left at zero or below are deleted.
+     */
+    public void companyRemoved(String company) {
+        List<Object[]> perRenter = em.createNamedQuery("countReservationsPerRenterInCompany", Object[].class)
+                .setParameter("company", company)
+                .getResultList();
+        Map<String, Integer> sorted = new TreeMap<>();
+        for (Object[] row : perRenter) {
+            count(sorted, (String) row[0], -((Long) row[1]).intValue());
+        }
+        for (Map.Entry<String, Integer> entry : sorted.entrySet()) {
+            updateRenterCount(entry.getKey(), entry.getValue());
+        }
+        em.createNamedQuery("deleteEmptyRenterReservationCounts").executeUpdate();
+        em.createNamedQuery("deleteCarTypePopularityOfCompany")
+                .setParameter("company", company)
+                .executeUpdate();
+    }
+
+    /**
+     * Recompute all statistics from the stored reservations, for instance
+     * after reservations were loaded without going through this ledger.
+     * The renters are counted page by page and the car types company by
+     * company, and every part is written out and forgotten before the next,
+     * so the number of reservations is not limited by the memory of the
+     * server.
+     */
+    public void rebuild() {
+        em.createNamedQuery("deleteAllRenterReservationCounts").executeUpdate();
+        em.createNamedQuery("deleteAllCarTypePopularity").executeUpdate();
+        // keyset paging on the renter name
+        List<Object[]> page = em.createNamedQuery("countReservationsPerRenter", Object[].class)
+                .setMaxResults(REBUILD_PAGE_SIZE)
+                .getResultList();
+        while (true) {
+            String after = null;
+            for (Object[] row : page) {
+                after = (String) row[0];
+                RenterReservationCount count = new RenterReservationCount(after);
+                count.setReservationCount(((Long) row[1]).intValue());
+                em.persist(count);
+            }
+            em.flush();
+            em.clear();
+            if (page.size() < REBUILD_PAGE_SIZE)
+                break;
+            page = em.createNamedQuery("countReservationsPerRenterAfter", Object[].class)
+                    .setParameter("after", after)
+                    .setMaxResults(REBUILD_PAGE_SIZE)
+                    .getResultList();
+        }
+        for (String company : em.createNamedQuery("getCompaniesWithReservations", String.class).getResultList()) {
+            for (Object[] row : em.createNamedQuery("countReservationsPerYearAndCarTypeInCompany", Object[].class)
+                    .setParameter("company", company)
+                    .getResultList()) {
+                CarTypePopularity popularity = new CarTypePopularity(company, ((Number) row[0]).intValue(), (String) row[1]);
+                popularity.setReservationCount(((Long) row[2]).intValue());
+                em.persist(popularity);
+            }
+            em.flush();
+            em.clear();
+        }
+    }
+
+    /**
+     * Store a zero counter for the given renter, in a transaction of its own
+     * so a concurrent insert of the same counter only fails this one.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void createRenterCount(String renter) {
+        em.persist(new RenterReservationCount(renter));
+    }
+
+    /**
+     * Store a zero counter for the given company, year and car type, see
+     * {@link #createRenterCount}.
+     */
+    @TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+    public void createCarTypePopularity(CarTypePopularityKey key) {
+        em.persist(new CarTypePopularity(key.getRentalCompany(), key.getRentalYear(), key.getCarType()));
+    }
+
+    // an increment in the database only locks the counter until commit, instead of reading it first
+    private void addReservations(String renter, int reservations) {
+        if (updateRenterCount(renter, reservations) > 0)
+            return;
+        try {
+            context.getBusinessObject(ReservationLedger.class).createRenterCount(renter);
+        } catch (EJBException e) {
+            // another transaction created it first
+        }
+        if (updateRenterCount(renter, reservations) == 0)
+            throw new EJBException("Cannot count the reservations of " + renter);
+    }
+
+    private void addReservations(CarTypePopularityKey key, int reservations) {
+        if (updateCarTypePopularity(key, reservations) > 0)
+            return;
+        try {
+            context.getBusinessObject(ReservationLedger.class).createCarTypePopularity(key);
+        } catch (EJBException e) {
+            // another transaction created it first
+        }
+        if (updateCarTypePopularity(key, reservations) == 0)
+            throw new EJBException("Cannot count the reservations of " + key.getCarType()
+                    + " in " + key.getRentalCompany() + " in " + key.getRentalYear());
+    }
+
+    private int updateRenterCount(String renter, int reservations) {
+        return em.createNamedQuery("addRenterReservations")
+                .setParameter("renter", renter)
+                .setParameter("reservations", reservations)
+                .executeUpdate();
+    }
+
+    private int updateCarTypePopularity(CarTypePopularityKey key, int reservations) {
+        return em.createNamedQuery("addCarTypeReservations")
+                .setParameter("company", key.getRentalCompany())
+                .setParameter("year", key.getRentalYear())
+                .setParameter("carType", key.getCarType())
+                .setParameter("reservations", reservations)
+                .executeUpdate();
+    }
+
+    private static <K> void count(Map<K, Integer> counts, K key, int reservations) {
+        Integer count = counts.get(key);
+        counts.put(key, count == null ? reservations : count + reservations);
+    }
+}
@@ -0,0 +1,92 @@
+package session;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.ejb.EJB;
+import javax.ejb.Stateless;
+import javax.ejb.TransactionAttribute;
+import javax.ejb.TransactionAttributeType;
+import javax.persistence.EntityManager;
+import javax.persistence.LockModeType;
+import javax.persistence.PersistenceContext;
+import rental.Car;
+import rental.Reservation;
+
+/**
+ * Stores imported reservations in batches, each in its own transaction, so
+ * an import never holds more than one batch in memory.
+ */
+@Stateless
+@TransactionAttribute(TransactionAttributeType.REQUIRES_NEW)
+public class ReservationTransfer {
+
+    private static final int MAX_IN_LIST = 1000;
+
+    @PersistenceContext
+    private EntityManager em;
+
+    @EJB
+    private ReservationLedger ledger;
+
+    @EJB
+    private CatalogueCache catalogueCache;
+
+    /**
+     * Store a batch of reservations for existing cars.
+     * @throws IllegalArgumentException if a reservation refers to a car that
+     * does not exist or is of another type, or overlaps with a stored
+     * reservation or one earlier in the batch (e.g. when a file is imported
+     * twice), nothing of the batch is stored then
+     */
+    public void importBatch(List<Reservation> batch) {
+        // company name -> the ids of the cars its reservations are for
+        Map<String, List<Integer>> carIds = new HashMap<>();
+        for (Reservation res : batch) {
+            List<Integer> ids = carIds.get(res.getRentalCompany());
+            if (ids == null) {
+                ids = new ArrayList<>();
+                carIds.put(res.getRentalCompany(), ids);
+            }
+            ids.add(res.getCarId());
+        }
+        Map<String, Map<Integer, Car>> cars = new HashMap<>();
+        for (Map.Entry<String, List<Integer>> company : carIds.entrySet()) {
+            Map<Integer, Car> byId = new HashMap<>();
+            List<Integer> ids = company.getValue();
+            // databases limit the length of an IN list, so a large batch is looked up in parts
+            for (int from = 0; from < ids.size(); from += MAX_IN_LIST) {
+                for (Car car : em.createNamedQuery("getCarsWithIdsInCompany", Car.class)
+                        .setParameter("companyName", company.getKey())
+                        .setParameter("ids", ids.subList(from, Math.min(ids.size(), from + MAX_IN_LIST)))
+                        .getResultList()) {
+                    byId.put(car.getId(), car);
+                }
+            }
+            cars.put(company.getKey(), byId);
+        }
+        for (Reservation res : batch) {
+            Car car = cars.get(res.getRentalCompany()).get(res.getCarId());
+            if (car == null || !car.getType().getName().equals(res.getCarType()))
+                throw new IllegalArgumentException("No car " + res.getCarId() + " of type "
+                        + res.getCarType() + " in " + res.getRentalCompany());
+            if (!car.isAvailable(res.getStartDay(), res.getEndDay()))
+                throw new IllegalArgumentException("Car " + res.getCarId() + " in " + res.getRentalCompany()
+                        + " is reserved already from " + res.getStartDate() + " to " + res.getEndDate());
+            em.persist(res);
+            car.addReservation(res);
+            // like a booking, so a concurrent booking of the same car fails instead of overlapping
+            em.lock(car, LockModeType.OPTIMISTIC_FORCE_INCREMENT);
+        }
+    }
+
+    /**
+     * Recompute what is derived from the reservations after an import.
+     */
+    public void finishImport() {
+        ledger.rebuild();
+        // cached companies carry availability indexes built from the old reservations
+        catalogueCache.evictAll();
+    }
+}
@@ -0,0 +1,46 @@
+package session;
+
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+import javax.transaction.TransactionSynchronizationRegistry;
+
+/**
+ * Helpers for work that has to wait for the outcome of the current
+ * container transaction, such as updating in-memory indexes and caches.
+ */
+final class Transactions {
+
+    private Transactions() {
+    }
+
+    /**
+     * Run the given change once the current transaction has committed.
+     * Nothing happens when it rolls back.
+     */
+    static void afterCommit(TransactionSynchronizationRegistry transactions, Runnable change) {
+        afterCompletion(transactions, change, true);
+    }
+
+    /**
+     * Run the given cleanup once the current transaction has committed or
+     * rolled back.
+     */
+    static void afterCompletion(TransactionSynchronizationRegistry transactions, Runnable cleanup) {
+        afterCompletion(transactions, cleanup, false);
+    }
+
+    private static void afterCompletion(TransactionSynchronizationRegistry transactions,
+            final Runnable work, final boolean onlyOnCommit) {
+        transactions.registerInterposedSynchronization(new Synchronization() {
+            @Override
+            public void beforeCompletion() {
+            }
+
+            @Override
+            public void afterCompletion(int status) {
+                if (!onlyOnCommit || status == Status.STATUS_COMMITTED)
+                    work.run();
+            }
+        });
+    }
+}
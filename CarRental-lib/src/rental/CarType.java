@@ -1,15 +1,22 @@
 package rental;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 
 @Entity
-public class CarType implements Serializable{
+@Cacheable
+public class CarType implements Externalizable {
+
+    private static final long serialVersionUID = 1L;
     
-    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Id @GeneratedValue(strategy = GenerationType.TABLE, generator = "CarTypeIds")
     private int id;
     private String name;
     private int nbOfSeats;
@@ -89,6 +96,30 @@ public class CarType implements Serializable{
     
     
     
+    /*****************
+     * SERIALIZATION *
+     *****************/
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeInt(id);
+        Externals.writeName(out, name);
+        out.writeInt(nbOfSeats);
+        out.writeBoolean(smokingAllowed);
+        out.writeDouble(rentalPricePerDay);
+        out.writeFloat(trunkSpace);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        id = in.readInt();
+        name = Externals.readName(in);
+        nbOfSeats = in.readInt();
+        smokingAllowed = in.readBoolean();
+        rentalPricePerDay = in.readDouble();
+        trunkSpace = in.readFloat();
+    }
+
     /*************
      * TO STRING *
      *************/
@@ -0,0 +1,31 @@
+package rental;
+
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * Conversions between dates and day numbers counted from 1 January 1970.
+ * Reservation periods are mapped as @Temporal(DATE), so they always fall on
+ * midnight in the default time zone and a day number identifies them exactly.
+ */
+public final class EpochDay {
+
+    private static final long MILLIS_PER_DAY = 1000L * 60 * 60 * 24;
+
+    private EpochDay() {
+    }
+
+    public static int of(Date date) {
+        long millis = date.getTime();
+        return (int) Math.floorDiv(millis + TimeZone.getDefault().getOffset(millis), MILLIS_PER_DAY);
+    }
+
+    /**
+     * Get midnight of the given day in the default time zone.
+     */
+    public static Date toDate(int day) {
+        return Date.from(LocalDate.ofEpochDay(day).atStartOfDay(ZoneId.systemDefault()).toInstant());
+    }
+}
@@ -0,0 +1,28 @@
+package rental;
+
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+
+/**
+ * Field encodings shared by the Externalizable classes that cross remote
+ * calls and session passivation.
+ */
+final class Externals {
+
+    private Externals() {
+    }
+
+    /**
+     * Write a company or car type name. Names are interned, so the stream
+     * writes every distinct name once and refers back to it afterwards.
+     */
+    static void writeName(ObjectOutput out, String name) throws IOException {
+        out.writeObject(name == null ? null : name.intern());
+    }
+
+    static String readName(ObjectInput in) throws IOException, ClassNotFoundException {
+        String name = (String) in.readObject();
+        return name == null ? null : name.intern();
+    }
+}
@@ -1,22 +1,36 @@
 package rental;
 
-import java.io.Serializable;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import java.util.Date;
+import javax.persistence.Access;
+import javax.persistence.AccessType;
 import javax.persistence.MappedSuperclass;
 import javax.persistence.Temporal;
 import javax.persistence.TemporalType;
+import javax.persistence.Transient;
 
 @MappedSuperclass
-public class Quote implements Serializable {
+@Access(AccessType.FIELD)
+public class Quote implements Externalizable {
 
-    @Temporal(TemporalType.DATE)
-    private Date startDate;
-    @Temporal(TemporalType.DATE)
-    private Date endDate;
+    private static final long serialVersionUID = 1L;
+
+    // the period as day numbers, see EpochDay; mapped to the DATE columns
+    // STARTDATE and ENDDATE through the date properties
+    @Transient
+    private int startDay;
+    @Transient
+    private int endDay;
     private String carRenter;
     private String rentalCompany;
     private String carType;
     private double rentalPrice;
+    // the car set aside for this quote by the company, 0 if none
+    @Transient
+    private long holdId;
     
     /***************
      * CONSTRUCTOR *
@@ -27,9 +41,13 @@ public class Quote implements Serializable {
     }
     
     public Quote(String carRenter, Date start, Date end, String rentalCompany, String carType, double rentalPrice) {
+        this(carRenter, EpochDay.of(start), EpochDay.of(end), rentalCompany, carType, rentalPrice);
+    }
+    
+    public Quote(String carRenter, int startDay, int endDay, String rentalCompany, String carType, double rentalPrice) {
         this.carRenter = carRenter;
-        this.startDate = start;
-        this.endDate = end;
+        this.startDay = startDay;
+        this.endDay = endDay;
         this.rentalCompany = rentalCompany;
         this.carType = carType;
         this.rentalPrice = rentalPrice;
@@ -39,20 +57,32 @@ public class Quote implements Serializable {
      * Getters / Setters *
      *************/
     
+    @Access(AccessType.PROPERTY)
+    @Temporal(TemporalType.DATE)
     public Date getStartDate() {
-        return startDate;
+        return EpochDay.toDate(startDay);
     }
 
     public void setStartDate(Date startDate) {
-        this.startDate = startDate;
+        this.startDay = EpochDay.of(startDate);
     }
 
+    @Access(AccessType.PROPERTY)
+    @Temporal(TemporalType.DATE)
     public Date getEndDate() {
-        return endDate;
+        return EpochDay.toDate(endDay);
     }
 
     public void setEndDate(Date endDate) {
-        this.endDate = endDate;
+        this.endDay = EpochDay.of(endDate);
+    }
+
+    public int getStartDay() {
+        return startDay;
+    }
+
+    public int getEndDay() {
+        return endDay;
     }
 
     public String getCarRenter() {
@@ -87,8 +117,43 @@ public class Quote implements Serializable {
         this.rentalPrice = rentalPrice;
     }
 
+    public long getHoldId() {
+        return holdId;
+    }
+
+    public void setHoldId(long holdId) {
+        this.holdId = holdId;
+    }
+
     
     
+    /*****************
+     * SERIALIZATION *
+     *****************/
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        out.writeInt(startDay);
+        out.writeInt(endDay);
+        out.writeObject(carRenter);
+        Externals.writeName(out, rentalCompany);
+        Externals.writeName(out, carType);
+        out.writeDouble(rentalPrice);
+        // kept across passivation of a session that holds the quote
+        out.writeLong(holdId);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        startDay = in.readInt();
+        endDay = in.readInt();
+        carRenter = (String) in.readObject();
+        rentalCompany = Externals.readName(in);
+        carType = Externals.readName(in);
+        rentalPrice = in.readDouble();
+        holdId = in.readLong();
+    }
+
     /*************
      * TO STRING *
      *************/
@@ -105,12 +170,12 @@ public class Quote implements Serializable {
 	int result = 1;
 	result = prime * result + ((carRenter == null) ? 0 : carRenter.hashCode());
 	result = prime * result + ((carType == null) ? 0 : carType.hashCode());
-	result = prime * result + ((endDate == null) ? 0 : endDate.hashCode());
+	result = prime * result + endDay;
 	result = prime * result + ((rentalCompany == null) ? 0 : rentalCompany.hashCode());
 	long temp;
 	temp = Double.doubleToLongBits(rentalPrice);
 	result = prime * result + (int) (temp ^ (temp >>> 32));
-	result = prime * result + ((startDate == null) ? 0 : startDate.hashCode());
+	result = prime * result + startDay;
 	return result;
     }
 
@@ -133,10 +198,7 @@ public class Quote implements Serializable {
 		return false;
 	} else if (!carType.equals(other.carType))
             return false;
-	if (endDate == null) {
-            if (other.endDate != null)
-		return false;
-	} else if (!endDate.equals(other.endDate))
+	if (endDay != other.endDay)
             return false;
 	if (rentalCompany == null) {
             if (other.rentalCompany != null)
@@ -145,10 +207,7 @@ public class Quote implements Serializable {
             return false;
 	if (Double.doubleToLongBits(rentalPrice) != Double.doubleToLongBits(other.rentalPrice))
             return false;
-	if (startDate == null) {
-            if (other.startDate != null)
-		return false;
-	} else if (!startDate.equals(other.startDate))
+	if (startDay != other.startDay)
             return false;
 	return true;
     }
@@ -1,5 +1,8 @@
 package rental;
 
+import java.io.IOException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
@@ -8,7 +11,7 @@ import javax.persistence.Id;
 @Entity
 public class Reservation extends Quote {
 
-    @Id @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @Id @GeneratedValue(strategy = GenerationType.TABLE, generator = "ReservationIds")
     private int reservationId;
     private int carId;
     
@@ -19,7 +22,7 @@ public class Reservation extends Quote {
      ***************/
 
     public Reservation(Quote quote, int carId) {
-    	super(quote.getCarRenter(), quote.getStartDate(), quote.getEndDate(), 
+    	super(quote.getCarRenter(), quote.getStartDay(), quote.getEndDay(), 
     		quote.getRentalCompany(), quote.getCarType(), quote.getRentalPrice());
         this.carId = carId;
     }
@@ -51,6 +54,24 @@ public class Reservation extends Quote {
     
     
     
+    /*****************
+     * SERIALIZATION *
+     *****************/
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        super.writeExternal(out);
+        out.writeInt(reservationId);
+        out.writeInt(carId);
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException, ClassNotFoundException {
+        super.readExternal(in);
+        reservationId = in.readInt();
+        carId = in.readInt();
+    }
+
     /*************
      * TO STRING *
      *************/
@@ -4,8 +4,9 @@ import java.util.Date;
 
 public class ReservationConstraints  {
     
-    private Date startDate;
-    private Date endDate;
+    // day numbers, see EpochDay
+    private int startDay;
+    private int endDay;
     private String carType;
     private String region;
 	
@@ -17,13 +18,17 @@ public class ReservationConstraints  {
     }
     
     public Date getStartDate() {
-		return startDate;
+		return EpochDay.toDate(startDay);
 	}
     
     private void setStartDate(Date startDate) {
-		this.startDate = startDate;
+		this.startDay = EpochDay.of(startDate);
 	}
 
+    public int getStartDay() {
+        return startDay;
+    }
+
     public String getRegion() {
         return region;
     }
@@ -33,12 +38,16 @@ public class ReservationConstraints  {
     }
     
     public Date getEndDate() {
-		return endDate;
+		return EpochDay.toDate(endDay);
 	}
     
 	private void setEndDate(Date endDate) {
-		this.endDate = endDate;
+		this.endDay = EpochDay.of(endDate);
 	}
+
+    public int getEndDay() {
+        return endDay;
+    }
 	
 	public String getCarType() {
 		return carType;
@@ -58,9 +67,8 @@ public class ReservationConstraints  {
 	public int hashCode() {
 		final int prime = 31;
 		int result = 1;
-		result = prime * result + ((endDate == null) ? 0 : endDate.hashCode());
-		result = prime * result
-				+ ((startDate == null) ? 0 : startDate.hashCode());
+		result = prime * result + endDay;
+		result = prime * result + startDay;
 		result = prime * result + ((carType == null) ? 0 : carType.hashCode());
 		return result;
 	}
@@ -74,15 +82,9 @@ public class ReservationConstraints  {
 		if (getClass() != obj.getClass())
 			return false;
 		ReservationConstraints other = (ReservationConstraints) obj;
-		if (endDate == null) {
-			if (other.endDate != null)
-				return false;
-		} else if (!endDate.equals(other.endDate))
+		if (endDay != other.endDay)
 			return false;
-		if (startDate == null) {
-			if (other.startDate != null)
-				return false;
-		} else if (!startDate.equals(other.startDate))
+		if (startDay != other.startDay)
 			return false;
 		if (carType == null) {
 			if (other.carType != null)
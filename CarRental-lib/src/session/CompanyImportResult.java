@@ -0,0 +1,59 @@
+package session;
+
+import java.io.Serializable;
+
+/**
+ * Outcome of adding one company file in a bulk import.
+ */
+public class CompanyImportResult implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String companyCsv;
+    private final String company;
+    private final int nbOfCars;
+    private final String error;
+
+    public CompanyImportResult(String companyCsv, String company, int nbOfCars, String error) {
+        this.companyCsv = companyCsv;
+        this.company = company;
+        this.nbOfCars = nbOfCars;
+        this.error = error;
+    }
+
+    /**
+     * The .csv file the company was read from
+     */
+    public String getCompanyCsv() {
+        return companyCsv;
+    }
+
+    /**
+     * The name of the company, or null if the file could not be parsed
+     */
+    public String getCompany() {
+        return company;
+    }
+
+    public int getNbOfCars() {
+        return nbOfCars;
+    }
+
+    /**
+     * Why the company was not added, or null if it was
+     */
+    public String getError() {
+        return error;
+    }
+
+    public boolean isAdded() {
+        return error == null;
+    }
+
+    @Override
+    public String toString() {
+        return isAdded()
+                ? String.format("%s: added %s with %d cars", companyCsv, company, nbOfCars)
+                : String.format("%s: failed, %s", companyCsv, error);
+    }
+}
@@ -1,6 +1,8 @@
 package session;
 
 import java.rmi.RemoteException;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import javax.ejb.Remote;
 import rental.CarType;
@@ -58,6 +60,37 @@ public interface ManagerSessionRemote {
      */
     public void addCompany(String companyCsv) throws RemoteException;
     
+    /**
+     * Add many companies at once. All files are parsed and validated in
+     * parallel before anything is stored, then every valid company is
+     * persisted in its own transaction, so one bad file does not stop the
+     * others.
+     * @param companyCsvs paths to .csv files on the server or in the jar
+     * @return a result per file, in the given order
+     * @throws RemoteException 
+     */
+    public List<CompanyImportResult> addCompanies(List<String> companyCsvs) throws RemoteException;
+    
+    /**
+     * Add a new company from a .csv file on the server, persisting its cars
+     * in chunks of the given size, each in its own transaction. When the
+     * import fails halfway, importing the same file again resumes after the
+     * last committed chunk.
+     * @param csvPath path to the .csv file on the server, or to a .csv file in the jar
+     * @param chunkSize number of cars per transaction, or 0 for the default
+     * @return the number of cars of the company
+     * @throws RemoteException 
+     */
+    public long importCompany(String csvPath, int chunkSize) throws RemoteException;
+    
+    /**
+     * Get the number of cars committed so far by an import of a company
+     * @param companyName name of the company
+     * @return long
+     * @throws RemoteException 
+     */
+    public long getImportProgress(String companyName) throws RemoteException;
+    
     /**
      * Remove a company from the car rental agency
      * @param companyName name of the company to be removed
@@ -80,6 +113,14 @@ public interface ManagerSessionRemote {
      */
     public Set<String> getBestClients() throws RemoteException;
     
+    /**
+     * Get the clients with the most reservations, best client first
+     * @param k maximum number of clients, no clients when 0 or less
+     * @return a list of String
+     * @throws RemoteException 
+     */
+    public List<String> getTopClients(int k) throws RemoteException;
+    
     /**
      * Get the most popular car type of a car rental company for a given calendar year
      * @param carRentalCompanyName name of the company
@@ -88,4 +129,59 @@ public interface ManagerSessionRemote {
      * @throws RemoteException 
      */
     public CarType getMostPopularCarTypeIn(String carRentalCompanyName, int year) throws RemoteException;
+    
+    /**
+     * Write all reservations to a file on the server, as .csv or in a more
+     * compact binary format. Reservations are read page by page, so the
+     * number of reservations is not limited by the memory of the server.
+     * @param path path of the file on the server
+     * @param binary whether to use the binary format instead of .csv
+     * @return the number of exported reservations
+     * @throws RemoteException 
+     */
+    public long exportReservations(String path, boolean binary) throws RemoteException;
+    
+    /**
+     * Load reservations from a file on the server that was written by
+     * exportReservations, in batches of the given size, each in its own
+     * transaction. The cars the reservations refer to must exist. The
+     * reservation statistics are rebuilt afterwards.
+     * @param path path of the file on the server
+     * @param binary whether the file is in the binary format instead of .csv
+     * @param batchSize number of reservations per transaction, or 0 for the default
+     * @return the number of imported reservations
+     * @throws RemoteException when the file cannot be read, is incomplete,
+     * or refers to unknown or already reserved cars; the batches stored
+     * before the failure are kept, and rebuildStatistics brings the
+     * statistics in line with them
+     */
+    public long importReservations(String path, boolean binary, int batchSize) throws RemoteException;
+    
+    /**
+     * Recompute the reservation statistics (best clients, most popular car
+     * types) from all stored reservations
+     * @throws RemoteException 
+     */
+    public void rebuildStatistics() throws RemoteException;
+    
+    /**
+     * Get the hit and miss counters of the shared entity and query cache,
+     * when the server runs with -Drental.cache-statistics=true, and the hit,
+     * eviction and invalidation counters of the cache of available car types
+     * per period
+     * @return a map from counter name to its value
+     * @throws RemoteException 
+     */
+    public Map<String, Long> getCacheStatistics() throws RemoteException;
+    
+    /**
+     * Get the number of calls, failed calls and latency percentiles of every
+     * method of the reservation and manager sessions called since the start
+     * of the current window (deployment or the last reset). The same data is
+     * available through JMX as rental:type=CallStatistics.
+     * @param reset whether to start a new window after taking these statistics
+     * @return a list of MethodStatistics, ordered by method
+     * @throws RemoteException 
+     */
+    public List<MethodStatistics> getMethodStatistics(boolean reset) throws RemoteException;
 }
\ No newline at end of file
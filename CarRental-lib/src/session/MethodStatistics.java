@@ -0,0 +1,100 @@
+package session;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * Calls, failures and latencies of one session bean method, measured since
+ * the start of the current statistics window. Latencies are in microseconds
+ * and accurate to about 3%.
+ */
+public class MethodStatistics implements Serializable {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String method;
+    private final Date windowStart;
+    private final long calls;
+    private final long exceptions;
+    private final double meanMicros;
+    private final long p50Micros;
+    private final long p90Micros;
+    private final long p99Micros;
+    private final long p999Micros;
+    private final long maxMicros;
+
+    public MethodStatistics(String method, Date windowStart, long calls, long exceptions, double meanMicros,
+            long p50Micros, long p90Micros, long p99Micros, long p999Micros, long maxMicros) {
+        this.method = method;
+        this.windowStart = windowStart;
+        this.calls = calls;
+        this.exceptions = exceptions;
+        this.meanMicros = meanMicros;
+        this.p50Micros = p50Micros;
+        this.p90Micros = p90Micros;
+        this.p99Micros = p99Micros;
+        this.p999Micros = p999Micros;
+        this.maxMicros = maxMicros;
+    }
+
+    /**
+     * The bean and method, e.g. ReservationSession.createQuote(String,Date,Date,String,String)
+     */
+    public String getMethod() {
+        return method;
+    }
+
+    public Date getWindowStart() {
+        return windowStart;
+    }
+
+    public long getCalls() {
+        return calls;
+    }
+
+    /**
+     * The number of calls that ended in an exception, they are included in
+     * the calls and latencies
+     */
+    public long getExceptions() {
+        return exceptions;
+    }
+
+    public double getMeanMicros() {
+        return meanMicros;
+    }
+
+    public long getP50Micros() {
+        return p50Micros;
+    }
+
+    public long getP90Micros() {
+        return p90Micros;
+    }
+
+    public long getP99Micros() {
+        return p99Micros;
+    }
+
+    public long getP999Micros() {
+        return p999Micros;
+    }
+
+    public long getMaxMicros() {
+        return maxMicros;
+    }
+
+    /**
+     * Calls per second since the start of the window, up to the given moment
+     */
+    public double getThroughput(Date now) {
+        long millis = now.getTime() - windowStart.getTime();
+        return millis <= 0 ? 0 : calls * 1000.0 / millis;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s: %d calls, %d exceptions, mean %.0fus, p50 %dus, p90 %dus, p99 %dus, p99.9 %dus, max %dus",
+                method, calls, exceptions, meanMicros, p50Micros, p90Micros, p99Micros, p999Micros, maxMicros);
+    }
+}
@@ -0,0 +1,70 @@
+package session;
+
+import java.rmi.RemoteException;
+import java.util.Date;
+import java.util.List;
+import javax.ejb.Remote;
+import rental.CarType;
+import rental.Quote;
+import rental.Reservation;
+import rental.ReservationException;
+
+/**
+ * Reservations without a session on the server: every quote is handed out
+ * as a signed token that the client keeps and hands back to confirm it.
+ */
+@Remote
+public interface QuoteTokenSessionRemote {
+    
+    /**
+     * Get a list of all available car types within a specified period
+     * @param start start of the period
+     * @param end end of the period
+     * @return a list of CarType objects
+     * @throws RemoteException 
+     */
+    public List<CarType> getAvailableCarTypes(Date start, Date end) throws RemoteException;
+    
+    /**
+     * Try to create a quote with the given constraints
+     * @param renter renter name
+     * @param start start of the reservation period
+     * @param end end of the reservation period
+     * @param carType car type to be reserved
+     * @param region reservation region
+     * @return a token for the cheapest quote made with a car rental company
+     * consistent with the given constraints, valid for a limited time
+     * @throws RemoteException
+     * @throws ReservationException 
+     */
+    public String createQuote(String renter, Date start, Date end, String carType, String region) throws RemoteException, ReservationException;
+    
+    /**
+     * Get the quote of a token
+     * @param token token returned by createQuote
+     * @return the Quote object
+     * @throws RemoteException
+     * @throws ReservationException if the token is invalid or has expired
+     */
+    public Quote getQuote(String token) throws RemoteException, ReservationException;
+    
+    /**
+     * Try to confirm the quotes of the given tokens, all or none of them.
+     * Every token can be confirmed only once.
+     * @param tokens tokens returned by createQuote
+     * @return a list of Reservation objects
+     * @throws RemoteException
+     * @throws ReservationException 
+     */
+    public List<Reservation> confirmQuotes(List<String> tokens) throws RemoteException, ReservationException;
+
+    /**
+     * Get the name of the cheapest car type within a given period
+     * @param start start of the period
+     * @param end end of the period
+     * @param region region of the car type
+     * @return a string containing the name of the car type
+     * @throws RemoteException 
+     */
+    public String getCheapestCarType(Date start, Date end, String region) throws RemoteException;
+}
@@ -50,7 +50,7 @@ public interface ReservationSessionRemote {
      * @param end end of the reservation period
      * @param carType car type to be reserved
      * @param region reservation region
-     * @return a quote made with a car rental company consistent with the given constraints
+     * @return the cheapest quote made with a car rental company consistent with the given constraints
      * @throws RemoteException
      * @throws ReservationException 
      */
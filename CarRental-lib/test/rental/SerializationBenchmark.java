@@ -0,0 +1,84 @@
+package rental;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Measures the size and round trip time of the reservations and car types a
+ * remote call returns: 100 reservations and 20 car types, with distinct but
+ * equal name strings and midnight dates, as they come from the database.
+ * It only uses constructors that predate the Externalizable encoding, so
+ * the same class runs against either encoding.
+ *
+ * It lives in the test sources, so it is not packaged into the jar. Run it
+ * after ant compile-test with:
+ * java -cp build/classes:build/test/classes rental.SerializationBenchmark [rounds]
+ */
+public final class SerializationBenchmark {
+
+    private static final int RESERVATIONS = 100;
+    private static final int CAR_TYPES = 20;
+    private static final int WARMUP_ROUNDS = 20000;
+
+    private SerializationBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int rounds = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        List<Object> payload = payload();
+
+        int bytes = roundTrip(payload);
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            roundTrip(payload);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            roundTrip(payload);
+        }
+        long micros = (System.nanoTime() - start) / 1000 / rounds;
+        System.out.println(RESERVATIONS + " reservations + " + CAR_TYPES + " car types: "
+                + bytes + " bytes, " + micros + " us per round trip");
+    }
+
+    private static List<Object> payload() {
+        List<Object> payload = new ArrayList<>();
+        Calendar calendar = Calendar.getInstance();
+        for (int i = 0; i < RESERVATIONS; i++) {
+            calendar.clear();
+            calendar.set(2026, Calendar.JANUARY, 1 + i % 300);
+            Date start = calendar.getTime();
+            calendar.add(Calendar.DAY_OF_MONTH, 1 + i % 14);
+            Date end = calendar.getTime();
+            // new strings, like the columns of separate rows
+            Quote quote = new Quote(new String("renter" + i % 10), start, end,
+                    new String("Company" + i % 3), new String("Type" + i % CAR_TYPES), 40 + i % 7 * 10.5);
+            payload.add(new Reservation(quote, i));
+        }
+        for (int i = 0; i < CAR_TYPES; i++) {
+            payload.add(new CarType(new String("Type" + i), 2 + i % 6, 100 + i * 25, 40 + i * 10.5, i % 2 == 0));
+        }
+        return payload;
+    }
+
+    /**
+     * @return the number of bytes the payload was written in
+     */
+    private static int roundTrip(List<Object> payload) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(payload);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            if (((List<?>) in.readObject()).size() != payload.size())
+                throw new IllegalStateException("Round trip lost objects");
+        }
+        return bytes.size();
+    }
+}